@@ -0,0 +1,106 @@
+package com.reactivespring.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.reactivespring.domain.MovieInfo;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Keeps movie infos by id, filled on read and bounded by {@code movieinfos.cache.maximumSize}.
+ * Writes of this instance go straight into the cache, deletes drop their entry; writes of other
+ * instances arrive through {@link MovieInfoInvalidations}, and {@code expireAfter} bounds how
+ * long they go unnoticed when it is off.
+ */
+@Component
+@Slf4j
+public class MovieInfoCache {
+
+    // a movie info loaded by a read that raced with a write of it is not kept
+    private static final int GENERATION_STRIPES = 1024;
+
+    private final boolean enabled;
+    private final Cache<String, MovieInfo> movieInfos;
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+    private final Timer loadTimer;
+
+    public MovieInfoCache(MeterRegistry meterRegistry,
+                          @Value("${movieinfos.cache.enabled:false}") boolean enabled,
+                          @Value("${movieinfos.cache.maximumSize:100000}") long maximumSize,
+                          @Value("${movieinfos.cache.expireAfter:10m}") Duration expireAfter) {
+        this.enabled = enabled;
+        this.movieInfos = CaffeineCacheMetrics.monitor(meterRegistry, Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfter)
+                .recordStats()
+                .build(), "movieInfos");
+        this.loadTimer = Timer.builder("movieinfos.cache.load")
+                .description("Time to read a movie info missing from the cache")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * The cached movie info, or the one {@code load} reads and caches. Nothing is cached for an
+     * id {@code load} finds nothing for.
+     */
+    public Mono<MovieInfo> get(String id, Mono<MovieInfo> load) {
+
+        if (!enabled) {
+            return load;
+        }
+        return Mono.defer(() -> {
+            var cached = movieInfos.getIfPresent(id);
+            if (cached != null) {
+                return Mono.just(cached);
+            }
+            var generation = generations.get(stripe(id));
+            var sample = Timer.start();
+            // compute() runs under the same lock as the writes of the id
+            return load.doOnSuccess(movieInfo -> sample.stop(loadTimer))
+                    .doOnNext(movieInfo -> movieInfos.asMap().compute(id, (key, current) ->
+                            generations.get(stripe(id)) == generation ? movieInfo : current));
+        });
+    }
+
+    /**
+     * Caches a movie info this instance just wrote, unless a later version is cached already.
+     */
+    public void put(MovieInfo movieInfo) {
+
+        if (!enabled || movieInfo.getMovieInfoId() == null) {
+            return;
+        }
+        var id = movieInfo.getMovieInfoId();
+        generations.incrementAndGet(stripe(id));
+        movieInfos.asMap().merge(id, movieInfo, (current, written) -> isOlder(written, current) ? current : written);
+    }
+
+    public void invalidate(String id) {
+
+        if (!enabled || id == null) {
+            return;
+        }
+        generations.incrementAndGet(stripe(id));
+        movieInfos.invalidate(id);
+    }
+
+    private static boolean isOlder(MovieInfo written, MovieInfo current) {
+        return written.getVersion() != null && current.getVersion() != null && written.getVersion() < current.getVersion();
+    }
+
+    private static int stripe(String id) {
+        return Math.floorMod(id.hashCode(), GENERATION_STRIPES);
+    }
+}
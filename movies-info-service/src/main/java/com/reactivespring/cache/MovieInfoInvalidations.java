@@ -0,0 +1,131 @@
+package com.reactivespring.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.CollectionOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tells the other instances which movie infos this one wrote or deleted, so they drop them
+ * from their {@link MovieInfoCache}. Each write is a tiny document in a capped collection
+ * that every instance follows with a tailable cursor, which needs no replica set. A reopened
+ * cursor goes back {@code skew} before the last invalidation seen, since dropping an entry twice
+ * does no harm; invalidations lost for longer are bounded by the cache's {@code expireAfter}.
+ */
+@Component
+@Slf4j
+public class MovieInfoInvalidations {
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final MovieInfoCache movieInfoCache;
+    private final boolean enabled;
+    private final String collection;
+    private final long maxBytes;
+    private final Duration skew;
+    private final String origin = UUID.randomUUID().toString();
+    private final AtomicLong lastSeen = new AtomicLong();
+    private Disposable subscription;
+
+    public MovieInfoInvalidations(ReactiveMongoTemplate reactiveMongoTemplate, MovieInfoCache movieInfoCache,
+                                  @Value("${movieinfos.cache.broadcast.enabled:false}") boolean enabled,
+                                  @Value("${movieinfos.cache.broadcast.collection:movieInfoInvalidations}") String collection,
+                                  @Value("${movieinfos.cache.broadcast.maxBytes:1048576}") long maxBytes,
+                                  @Value("${movieinfos.cache.broadcast.skew:5s}") Duration skew) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.movieInfoCache = movieInfoCache;
+        this.enabled = enabled && movieInfoCache.isEnabled();
+        this.collection = collection;
+        this.maxBytes = maxBytes;
+        this.skew = skew;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+
+        if (!enabled) {
+            return;
+        }
+        lastSeen.set(System.currentTimeMillis());
+        // a tailable cursor on an empty capped collection is closed right away
+        createCollection()
+                .then(reactiveMongoTemplate.insert(new Document("origin", origin).append("at", new Date()), collection))
+                .block();
+        log.info("Following movie info invalidations in {}", collection);
+        subscription = follow().subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+
+    /**
+     * Tells the other instances to drop the movie info; a no-op unless the broadcast is on.
+     */
+    public Mono<Void> publish(String movieInfoId) {
+
+        if (!enabled) {
+            return Mono.empty();
+        }
+        return reactiveMongoTemplate.insert(new Document("movieInfoId", movieInfoId)
+                        .append("origin", origin)
+                        .append("at", new Date()), collection)
+                .then()
+                .onErrorResume(e -> {
+                    log.warn("Could not broadcast the invalidation of movie info {}", movieInfoId, e);
+                    return Mono.empty();
+                });
+    }
+
+    Flux<Document> follow() {
+
+        return Flux.defer(() -> reactiveMongoTemplate.tail(Query.query(Criteria.where("at")
+                                .gte(new Date(lastSeen.get() - skew.toMillis()))), Document.class, collection))
+                .doOnNext(invalidation -> {
+                    var at = invalidation.getDate("at");
+                    if (at != null) {
+                        lastSeen.accumulateAndGet(at.getTime(), Math::max);
+                    }
+                    var movieInfoId = invalidation.getString("movieInfoId");
+                    if (movieInfoId != null && !origin.equals(invalidation.getString("origin"))) {
+                        movieInfoCache.invalidate(movieInfoId);
+                    }
+                })
+                // the cursor ends when the server drops it, or at once when nothing matched yet
+                .repeatWhen(ends -> ends.delayElements(Duration.ofSeconds(1)))
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                        .maxBackoff(Duration.ofSeconds(30))
+                        .doBeforeRetry(signal -> log.warn("Movie info invalidations failed, reopening them", signal.failure())));
+    }
+
+    private Mono<Void> createCollection() {
+
+        return reactiveMongoTemplate.collectionExists(collection)
+                .flatMap(exists -> exists
+                        ? Mono.<Void>empty()
+                        : reactiveMongoTemplate.createCollection(collection, CollectionOptions.empty().capped().size(maxBytes))
+                        .then()
+                        // another instance created it first
+                        .onErrorResume(e -> reactiveMongoTemplate.collectionExists(collection)
+                                .flatMap(created -> created ? Mono.empty() : Mono.error(e))));
+    }
+}
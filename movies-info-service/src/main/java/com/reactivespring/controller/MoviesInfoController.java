@@ -1,49 +1,234 @@
 package com.reactivespring.controller;
 
 import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoFields;
+import com.reactivespring.repository.MovieInfoCursor;
+import com.reactivespring.repository.MovieInfoSort;
 import com.reactivespring.service.MoviesInfoService;
+import com.reactivespring.stream.MovieInfoChange;
+import com.reactivespring.stream.MovieInfoFeed;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import javax.validation.Valid;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
 
 @RestController
 @RequestMapping("/v1")
 public class MoviesInfoController {
 
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     MoviesInfoService moviesInfoService;
 
+    @Value("${movieinfos.page.defaultLimit:100}")
+    private int pageDefaultLimit;
+
+    @Value("${movieinfos.page.maxLimit:500}")
+    private int pageMaxLimit;
+
+    @Value("${movieinfos.lookup.maxIds:100}")
+    private int lookupMaxIds;
+
+    @Value("${movieinfos.search.defaultLimit:20}")
+    private int searchDefaultLimit;
+
+    @Value("${movieinfos.search.maxLimit:100}")
+    private int searchMaxLimit;
+
+    @Value("${movieinfos.search.maxOffset:1000}")
+    private int searchMaxOffset;
+
     public MoviesInfoController(MoviesInfoService moviesInfoService) {
         this.moviesInfoService = moviesInfoService;
     }
 
+    /**
+     * Movie infos by {@code ids}, else by {@code name}, else a page of all of them or of those of
+     * {@code year}. Pages are read in {@code sort} order and continue from the {@code cursor}
+     * handed out in the {@value #NEXT_CURSOR_HEADER} header of the previous page. Asked for as
+     * NDJSON, the listing is a full export instead, streamed without paging.
+     */
     @GetMapping("/movieinfos")
     public Flux<MovieInfo> getAllMovieInfos(@RequestParam(value = "year", required = false) Integer year,
-                                            @RequestParam(value = "name", required = false) String name) {
+                                            @RequestParam(value = "name", required = false) String name,
+                                            @RequestParam(value = "ids", required = false) List<String> ids,
+                                            @RequestParam(value = "fields", required = false) String fields,
+                                            @RequestParam(value = "sort", required = false) String sort,
+                                            @RequestParam(value = "cursor", required = false) String cursor,
+                                            @RequestParam(value = "limit", required = false) Integer limit,
+                                            ServerWebExchange exchange) {
 
-        if (year != null) {
-            return moviesInfoService.getMovieInfoByYear(year);
-        } else if (name != null) {
-            return moviesInfoService.getMovieInfoByName(name);
+        // only the picked fields are read and written
+        var movieInfoFields = fields == null ? null : parseFields(fields);
+        var names = movieInfoFields == null ? null : movieInfoFields.getNames();
+
+        Flux<MovieInfo> movieInfos;
+        if (ids != null) {
+            checkIds(ids);
+            movieInfos = moviesInfoService.getMovieInfosByIds(ids, names);
+        } else if (year == null && name != null) {
+            movieInfos = moviesInfoService.getMovieInfoByName(name, names);
+        } else if (exchange.getRequest().getHeaders().getAccept().contains(MediaType.APPLICATION_NDJSON)) {
+            movieInfos = moviesInfoService.exportMovieInfos(year, names);
         } else {
-            return moviesInfoService.getAllMovieInfos().log();
+            var movieInfoSort = parseSort(sort);
+            var after = cursor == null ? null : parseCursor(cursor, movieInfoSort);
+            var pageSize = parseLimit(limit);
+            // one extra movie info tells whether there is a next page
+            movieInfos = moviesInfoService.getMovieInfoPage(year, movieInfoSort, after, pageSize + 1, names)
+                    .collectList()
+                    .flatMapIterable(page -> {
+                        if (page.size() <= pageSize) {
+                            return page;
+                        }
+                        exchange.getResponse().getHeaders().set(NEXT_CURSOR_HEADER,
+                                MovieInfoCursor.after(movieInfoSort, page.get(pageSize - 1)).encode());
+                        return page.subList(0, pageSize);
+                    });
+        }
+        return movieInfoFields == null ? movieInfos : movieInfos.map(movieInfoFields::trim);
+    }
+
+    /**
+     * The POST form of {@code GET /movieinfos?ids=}, for id lists too long for a URL.
+     */
+    @PostMapping("/movieinfos/lookup")
+    public Flux<MovieInfo> lookupMovieInfos(@RequestBody List<String> ids,
+                                            @RequestParam(value = "fields", required = false) String fields,
+                                            ServerWebExchange exchange) {
+
+        return getAllMovieInfos(null, null, ids, fields, null, null, null, exchange);
+    }
+
+    /**
+     * Searches movie infos by name prefix, or with {@code mode=text} by the words of their name
+     * and cast. Pages are picked with {@code offset} and {@code limit}; offsets are capped since
+     * every skipped match is still read.
+     */
+    @GetMapping("/movieinfos/search")
+    public Flux<MovieInfo> searchMovieInfos(@RequestParam("q") String query,
+                                            @RequestParam(value = "mode", defaultValue = "prefix") String mode,
+                                            @RequestParam(value = "offset", defaultValue = "0") int offset,
+                                            @RequestParam(value = "limit", required = false) Integer limit) {
+
+        if (query.isBlank()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "q must not be blank");
+        }
+        if (!mode.equals("prefix") && !mode.equals("text")) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "mode must be one of prefix, text: " + mode);
+        }
+        if (offset < 0 || offset > searchMaxOffset) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "offset must be between 0 and " + searchMaxOffset + ": " + offset);
+        }
+        if (limit != null && limit < 1) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be positive: " + limit);
+        }
+        var pageSize = limit == null ? searchDefaultLimit : Math.min(limit, searchMaxLimit);
+
+        return moviesInfoService.searchMovieInfos(query, mode.equals("text"), offset, pageSize);
+    }
+
+    private void checkIds(List<String> ids) {
+
+        // all the ids go into a single $in query
+        var distinctIds = ids.stream().distinct().count();
+        if (distinctIds == 0 || distinctIds > lookupMaxIds) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Between 1 and " + lookupMaxIds + " ids must be passed, got " + distinctIds);
+        }
+    }
+
+    private MovieInfoSort parseSort(String sort) {
+
+        if (sort == null) {
+            return MovieInfoSort.ID;
+        }
+        try {
+            return MovieInfoSort.from(sort);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "sort must be one of id, year, release_date, name: " + sort);
         }
     }
 
+    private MovieInfoCursor parseCursor(String token, MovieInfoSort sort) {
+
+        MovieInfoCursor cursor;
+        try {
+            cursor = MovieInfoCursor.decode(token);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+        if (cursor.getSort() != sort) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "cursor does not belong to sort " + sort.name().toLowerCase(Locale.ROOT));
+        }
+        return cursor;
+    }
+
+    private int parseLimit(Integer limit) {
+
+        if (limit == null) {
+            return pageDefaultLimit;
+        }
+        if (limit < 1) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be positive: " + limit);
+        }
+        return Math.min(limit, pageMaxLimit);
+    }
+
+    private MovieInfoFields parseFields(String fields) {
+
+        try {
+            return MovieInfoFields.parse(fields);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    /**
+     * Carries a strong ETag; Spring answers a matching {@code If-None-Match} with 304 before the
+     * movie info is written out.
+     */
     @GetMapping("/movieinfos/{id}")
     public Mono<ResponseEntity<MovieInfo>> getMovieInfoById(@PathVariable String id) {
 
         return moviesInfoService.getMovieInfoById(id)
-                .map(ResponseEntity.ok()::body)
+                .map(movieInfo -> {
+                    var response = ResponseEntity.ok();
+                    if (movieInfo.getVersion() != null) {
+                        response.eTag(eTag(movieInfo));
+                    }
+                    return response.body(movieInfo);
+                })
                 .switchIfEmpty(Mono.just(ResponseEntity.notFound().build()))
                 .log();
     }
 
+    /**
+     * The version alone would repeat when a movie info is deleted and added again under the same
+     * id, so a hash of the fields goes with it.
+     */
+    private static String eTag(MovieInfo movieInfo) {
+
+        var fields = Objects.hash(movieInfo.getName(), movieInfo.getYear(), movieInfo.getCast(),
+                movieInfo.getRelease_date());
+        return "\"" + movieInfo.getVersion() + "-" + Integer.toHexString(fields) + "\"";
+    }
+
     @PutMapping("/movieinfos/{id}")
-    public Mono<ResponseEntity<MovieInfo>> updateMovieInfoById(@PathVariable String id, @RequestBody MovieInfo updatedMovieInfo) {
+    public Mono<ResponseEntity<MovieInfo>> updateMovieInfoById(@PathVariable String id, @RequestBody @Valid MovieInfo updatedMovieInfo) {
 
         return moviesInfoService.updateMovieInfoById(id, updatedMovieInfo)
                 .map(ResponseEntity.ok()::body)
@@ -51,6 +236,14 @@ public class MoviesInfoController {
                 .log();
     }
 
+    @PatchMapping("/movieinfos/{id}")
+    public Mono<ResponseEntity<MovieInfo>> patchMovieInfoById(@PathVariable String id, @RequestBody MovieInfo changes) {
+
+        return moviesInfoService.patchMovieInfoById(id, changes)
+                .map(ResponseEntity.ok()::body)
+                .switchIfEmpty(Mono.just(ResponseEntity.notFound().build()));
+    }
+
     @DeleteMapping("/movieinfos/{id}")
     @ResponseStatus(HttpStatus.NO_CONTENT)
     public Mono<Void> deleteMovieInfoById(@PathVariable String id) {
@@ -62,10 +255,29 @@ public class MoviesInfoController {
     @ResponseStatus(HttpStatus.CREATED)
     public Mono<MovieInfo> addMovieInfos(@RequestBody @Valid MovieInfo movieInfo) {
 
-        return moviesInfoService.addMovieInfo(movieInfo).log()/*
-                .doOnNext(savedInfo-> moviesInfoSink.tryEmitNext(savedInfo))*/;
+        return moviesInfoService.addMovieInfo(movieInfo).log();
+    }
+
+    /**
+     * The movie info change feed: adds, updates and deletes as they happen, each with a sequence
+     * number that is also the SSE event id. {@code after}, or the {@code Last-Event-ID} an SSE
+     * client sends when it reconnects, resumes after that sequence, see {@link MovieInfoFeed}.
+     */
+    @GetMapping(value = "/movieinfos/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<MovieInfoChange>> streamMovieInfoChanges(
+            @RequestParam(value = "after", required = false) Long after,
+            @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+
+        return moviesInfoService.streamMovieInfoChanges(after != null ? after : lastEventId)
+                .map(change -> ServerSentEvent.builder(change)
+                        .id(String.valueOf(change.getSequence()))
+                        .event(change.getType().name().toLowerCase(Locale.ROOT))
+                        .build());
+    }
+
+    @GetMapping(value = "/movieinfos/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<MovieInfoChange> streamMovieInfoChangesAsNdjson(@RequestParam(value = "after", required = false) Long after) {
 
-        //publish that movie to something
-        // subscriber to this move info
+        return moviesInfoService.streamMovieInfoChanges(after);
     }
 }
@@ -0,0 +1,49 @@
+package com.reactivespring.deadline;
+
+import com.reactivespring.exception.DeadlineExceededException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+/**
+ * Bounds a request by the budget in {@link RequestDeadline#HEADER}: one that arrives with none
+ * left is rejected and the rest are cancelled once it runs out. Requests without the header are
+ * not bounded.
+ */
+@Component
+@Slf4j
+public class DeadlineWebFilter implements WebFilter {
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+
+        var header = exchange.getRequest().getHeaders().getFirst(RequestDeadline.HEADER);
+        if (header == null) {
+            return chain.filter(exchange);
+        }
+
+        Duration budget;
+        try {
+            budget = Duration.ofMillis(Long.parseLong(header.trim()));
+        } catch (NumberFormatException e) {
+            log.info("Ignoring invalid {} header : {}", RequestDeadline.HEADER, header);
+            return chain.filter(exchange);
+        }
+        if (budget.isZero() || budget.isNegative()) {
+            return Mono.error(new DeadlineExceededException("Request deadline already passed"));
+        }
+        var deadline = RequestDeadline.after(budget);
+
+        return chain.filter(exchange)
+                .timeout(budget, Mono.error(() -> new DeadlineExceededException(
+                        "Request deadline of " + budget.toMillis() + "ms exceeded")))
+                .onErrorMap(e -> !(e instanceof DeadlineExceededException) && deadline.isExpired(),
+                        e -> new DeadlineExceededException("Request deadline of " + budget.toMillis() + "ms exceeded"))
+                .contextWrite(context -> context.put(RequestDeadline.CONTEXT_KEY, deadline));
+    }
+}
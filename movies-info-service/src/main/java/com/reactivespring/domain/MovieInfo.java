@@ -1,9 +1,13 @@
 package com.reactivespring.domain;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import javax.validation.constraints.NotBlank;
@@ -15,12 +19,17 @@ import java.util.List;
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
 @Document
+@CompoundIndex(name = "year_id", def = "{'year': 1, '_id': 1}")
+@CompoundIndex(name = "release_date_id", def = "{'release_date': 1, '_id': 1}")
+@CompoundIndex(name = "nameLower_id", def = "{'nameLower': 1, '_id': 1}")
 public class MovieInfo {
 
     @Id
     private String movieInfoId;
     @NotBlank(message = "MovieInfo.name must not be blank")
+    @Indexed
     private String name;
     @NotNull
     @Positive(message = "MovieInfo.year must be a positive integer")
@@ -28,4 +37,10 @@ public class MovieInfo {
     private List<@NotBlank(message = "MovieInfo.cast must not be blank") String> cast;
     private LocalDate release_date;
 
+    @Version
+    private Long version;
+
+    public MovieInfo(String movieInfoId, String name, Integer year, List<String> cast, LocalDate release_date) {
+        this(movieInfoId, name, year, cast, release_date, null);
+    }
 }
@@ -0,0 +1,62 @@
+package com.reactivespring.domain;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * The movie info fields picked with {@code fields=}, {@code movieInfoId} always among them. A
+ * trimmed movie info leaves the others null, and {@link MovieInfo} writes no null fields.
+ */
+public class MovieInfoFields {
+
+    private static final Map<String, BiConsumer<MovieInfo, MovieInfo>> FIELDS = new LinkedHashMap<>();
+
+    static {
+        FIELDS.put("movieInfoId", (from, to) -> to.setMovieInfoId(from.getMovieInfoId()));
+        FIELDS.put("name", (from, to) -> to.setName(from.getName()));
+        FIELDS.put("year", (from, to) -> to.setYear(from.getYear()));
+        FIELDS.put("cast", (from, to) -> to.setCast(from.getCast()));
+        FIELDS.put("release_date", (from, to) -> to.setRelease_date(from.getRelease_date()));
+        FIELDS.put("version", (from, to) -> to.setVersion(from.getVersion()));
+    }
+
+    private final Set<String> names;
+
+    private MovieInfoFields(Set<String> names) {
+        this.names = names;
+    }
+
+    public static MovieInfoFields parse(String fields) {
+
+        var requested = new LinkedHashSet<String>();
+        Arrays.stream(fields.split(","))
+                .map(String::trim)
+                .filter(field -> !field.isEmpty())
+                .forEach(field -> {
+                    if (!FIELDS.containsKey(field)) {
+                        throw new IllegalArgumentException("fields must be among " + String.join(",", FIELDS.keySet()) + ": " + fields);
+                    }
+                    requested.add(field);
+                });
+        var names = new LinkedHashSet<String>();
+        FIELDS.keySet().stream()
+                .filter(field -> field.equals("movieInfoId") || requested.contains(field))
+                .forEach(names::add);
+        return new MovieInfoFields(names);
+    }
+
+    public Set<String> getNames() {
+        return names;
+    }
+
+    public MovieInfo trim(MovieInfo movieInfo) {
+
+        var trimmed = new MovieInfo();
+        names.forEach(field -> FIELDS.get(field).accept(movieInfo, trimmed));
+        return trimmed;
+    }
+}
@@ -0,0 +1,103 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.MovieInfo;
+
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Base64;
+
+/**
+ * Position of the last movie info of a page, handed to clients as an opaque token. It holds the
+ * sort key and id of that movie info, so the next page is a range query on the index instead of
+ * a skip.
+ */
+public class MovieInfoCursor {
+
+    private static final String SEPARATOR = "|";
+
+    private final MovieInfoSort sort;
+    private final String key;
+    private final String movieInfoId;
+
+    private MovieInfoCursor(MovieInfoSort sort, String key, String movieInfoId) {
+        this.sort = sort;
+        this.key = key;
+        this.movieInfoId = movieInfoId;
+    }
+
+    public static MovieInfoCursor after(MovieInfoSort sort, MovieInfo movieInfo) {
+
+        String key;
+        switch (sort) {
+            case YEAR:
+                key = movieInfo.getYear() == null ? null : movieInfo.getYear().toString();
+                break;
+            case RELEASE_DATE:
+                key = movieInfo.getRelease_date() == null ? null : movieInfo.getRelease_date().toString();
+                break;
+            case NAME:
+                key = MovieInfoIndexes.nameKey(movieInfo.getName());
+                break;
+            default:
+                key = null;
+        }
+        return new MovieInfoCursor(sort, key, movieInfo.getMovieInfoId());
+    }
+
+    public static MovieInfoCursor decode(String token) {
+
+        try {
+            var value = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            var parts = value.split("\\" + SEPARATOR, -1);
+            if (parts.length != 3 || parts[2].isEmpty()) {
+                throw new IllegalArgumentException("Invalid cursor: " + token);
+            }
+            var cursor = new MovieInfoCursor(MovieInfoSort.valueOf(parts[0]),
+                    parts[1].isEmpty() ? null : URLDecoder.decode(parts[1], StandardCharsets.UTF_8),
+                    URLDecoder.decode(parts[2], StandardCharsets.UTF_8));
+            // fails on keys of the wrong type
+            cursor.getKeyValue();
+            return cursor;
+        } catch (RuntimeException e) {
+            // also covers bad base64, unknown sorts, bad numbers and bad dates
+            throw new IllegalArgumentException("Invalid cursor: " + token, e);
+        }
+    }
+
+    public String encode() {
+
+        // the parts are URL encoded so that names holding the separator survive
+        var value = sort.name() + SEPARATOR
+                + (key == null ? "" : URLEncoder.encode(key, StandardCharsets.UTF_8)) + SEPARATOR
+                + URLEncoder.encode(movieInfoId, StandardCharsets.UTF_8);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public MovieInfoSort getSort() {
+        return sort;
+    }
+
+    /**
+     * The sort key as stored, {@code null} for {@link MovieInfoSort#ID} or a movie info without one.
+     */
+    public Object getKeyValue() {
+
+        if (key == null) {
+            return null;
+        }
+        switch (sort) {
+            case YEAR:
+                return Integer.valueOf(key);
+            case RELEASE_DATE:
+                return LocalDate.parse(key);
+            default:
+                return key;
+        }
+    }
+
+    public String getMovieInfoId() {
+        return movieInfoId;
+    }
+}
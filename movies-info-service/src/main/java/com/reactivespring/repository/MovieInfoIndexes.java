@@ -0,0 +1,92 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.MovieInfo;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexResolver;
+import org.springframework.data.mongodb.core.index.TextIndexDefinition;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Locale;
+
+/**
+ * Keeps the indexes movie info reads use. The indexes are declared on {@link MovieInfo} and
+ * created here on startup, an index that exists already is left as it is. Every
+ * {@link MovieInfoSort} has an index ending in {@code _id}, so a page is a range scan wherever it
+ * starts, and {@code name} has one for lookups by exact name. Every movie info carries a
+ * {@code nameLower} copy of its name, see {@link MovieInfoNameKeyCallback}, so a case-insensitive
+ * prefix is a range scan too; a text index over {@code name} and {@code cast} serves tokenized
+ * searches ranked by Mongo's text score. Movie infos written before {@code nameLower} existed get
+ * it on startup.
+ */
+@Component
+@Slf4j
+public class MovieInfoIndexes {
+
+    public static final String NAME_KEY = "nameLower";
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    public MovieInfoIndexes(ReactiveMongoTemplate reactiveMongoTemplate) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+    }
+
+    /**
+     * The form names are compared in, for both the stored key and the searched prefix.
+     */
+    public static String nameKey(String name) {
+        return name == null ? null : name.trim().toLowerCase(Locale.ROOT);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+
+        ensureIndexes().block();
+        // a large catalog is keyed in the background rather than holding up startup
+        backfill().subscribe(
+                count -> {
+                    if (count > 0) {
+                        log.info("Added {} to {} movie infos", NAME_KEY, count);
+                    }
+                },
+                e -> log.warn("Could not add {} to the existing movie infos", NAME_KEY, e));
+    }
+
+    public Mono<Void> ensureIndexes() {
+
+        var indexOperations = reactiveMongoTemplate.indexOps(MovieInfo.class);
+        var declared = IndexResolver.create(reactiveMongoTemplate.getConverter().getMappingContext())
+                .resolveIndexFor(MovieInfo.class);
+        return Flux.fromIterable(declared)
+                .concatMap(indexOperations::ensureIndex)
+                // the resolver can not name a text index, and Mongo allows only one per collection
+                .then(indexOperations.ensureIndex(TextIndexDefinition.builder()
+                        .named("name_cast_text")
+                        .onField("name", 3F)
+                        .onField("cast")
+                        .build()))
+                .then();
+    }
+
+    /**
+     * Keys the movie infos saved without a {@code nameLower}, emitting how many were keyed.
+     */
+    public Mono<Long> backfill() {
+
+        var unkeyed = Query.query(Criteria.where(NAME_KEY).exists(false));
+        unkeyed.fields().include("name");
+        return reactiveMongoTemplate.find(unkeyed, Document.class, reactiveMongoTemplate.getCollectionName(MovieInfo.class))
+                .flatMap(movieInfo -> reactiveMongoTemplate.updateFirst(
+                        Query.query(Criteria.where("_id").is(movieInfo.get("_id")).and(NAME_KEY).exists(false)),
+                        new Update().set(NAME_KEY, nameKey(movieInfo.getString("name"))), MovieInfo.class), 8)
+                .count();
+    }
+}
@@ -0,0 +1,23 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.MovieInfo;
+import org.bson.Document;
+import org.reactivestreams.Publisher;
+import org.springframework.data.mongodb.core.mapping.event.ReactiveBeforeSaveCallback;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/**
+ * Writes the {@code nameLower} search key along with every saved movie info. Updates made with
+ * {@code findAndModify} set it themselves, see {@link MovieInfoRepositoryCustomImpl}.
+ */
+@Component
+public class MovieInfoNameKeyCallback implements ReactiveBeforeSaveCallback<MovieInfo> {
+
+    @Override
+    public Publisher<MovieInfo> onBeforeSave(MovieInfo movieInfo, Document document, String collection) {
+
+        document.put(MovieInfoIndexes.NAME_KEY, MovieInfoIndexes.nameKey(movieInfo.getName()));
+        return Mono.just(movieInfo);
+    }
+}
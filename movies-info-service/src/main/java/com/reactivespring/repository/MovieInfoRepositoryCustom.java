@@ -0,0 +1,71 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.MovieInfo;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+
+/**
+ * Read queries that are bounded by the request deadline, see {@link MovieInfoRepositoryCustomImpl}.
+ */
+public interface MovieInfoRepositoryCustom {
+
+    Mono<MovieInfo> findById(String id);
+
+    Flux<MovieInfo> findAll();
+
+    Flux<MovieInfo> findAllById(Iterable<String> ids);
+
+    Flux<MovieInfo> findByYear(Integer year);
+
+    Flux<MovieInfo> findByName(String name);
+
+    /**
+     * Like {@link #findAll()}, {@link #findAllById(Iterable)}, {@link #findByYear(Integer)} and
+     * {@link #findByName(String)}, reading only the given properties.
+     */
+    Flux<MovieInfo> findAll(Collection<String> fields);
+
+    Flux<MovieInfo> findAllById(Iterable<String> ids, Collection<String> fields);
+
+    Flux<MovieInfo> findByYear(Integer year, Collection<String> fields);
+
+    Flux<MovieInfo> findByName(String name, Collection<String> fields);
+
+    /**
+     * Up to {@code limit} movie infos, of {@code year} if given, in {@code sort} order and
+     * starting right after {@code after} if given.
+     */
+    Flux<MovieInfo> findPage(Integer year, MovieInfoSort sort, MovieInfoCursor after, int limit,
+                             Collection<String> fields);
+
+    /**
+     * Every movie info, of {@code year} if given, in id order. The driver reads them in batches
+     * as they are requested, so a slow reader holds the cursor rather than memory.
+     */
+    Flux<MovieInfo> streamAll(Integer year, Collection<String> fields);
+
+    /**
+     * Movie infos whose name starts with {@code prefix}, ignoring case, in name order.
+     */
+    Flux<MovieInfo> findByNamePrefix(String prefix, int offset, int limit);
+
+    /**
+     * Movie infos whose name or cast hold any of the words of {@code terms}, best match first.
+     */
+    Flux<MovieInfo> searchText(String terms, int offset, int limit);
+
+    /**
+     * Applies {@code update} in one {@code findAndModify} and emits the movie info as it is
+     * afterwards. With an {@code expectedVersion} only that version is modified. Empty when
+     * nothing matched.
+     */
+    Mono<MovieInfo> findAndModify(String id, Long expectedVersion, Update update);
+
+    /**
+     * Deletes the movie info and emits whether there was one to delete.
+     */
+    Mono<Boolean> removeById(String id);
+}
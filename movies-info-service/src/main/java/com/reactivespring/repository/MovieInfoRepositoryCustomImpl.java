@@ -0,0 +1,248 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.deadline.RequestDeadline;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.exception.DeadlineExceededException;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.TextCriteria;
+import org.springframework.data.mongodb.core.query.TextQuery;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+
+/**
+ * Runs the read queries with the time left until the request deadline as Mongo's
+ * {@code maxTimeMS}, so the server stops working on a query nobody is waiting for.
+ * The finders taking {@code fields} turn them into a projection.
+ */
+public class MovieInfoRepositoryCustomImpl implements MovieInfoRepositoryCustom {
+
+    private static final int OBJECT_ID = 7;
+    // documents the driver fetches per round trip when streaming
+    private static final int STREAM_BATCH_SIZE = 500;
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    public MovieInfoRepositoryCustomImpl(ReactiveMongoTemplate reactiveMongoTemplate) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+    }
+
+    @Override
+    public Mono<MovieInfo> findById(String id) {
+        return find(Query.query(Criteria.where("_id").is(id)), null).next();
+    }
+
+    @Override
+    public Flux<MovieInfo> findAll() {
+        return findAll(null);
+    }
+
+    @Override
+    public Flux<MovieInfo> findAllById(Iterable<String> ids) {
+        return findAllById(ids, null);
+    }
+
+    @Override
+    public Flux<MovieInfo> findByYear(Integer year) {
+        return findByYear(year, null);
+    }
+
+    @Override
+    public Flux<MovieInfo> findByName(String name) {
+        return findByName(name, null);
+    }
+
+    @Override
+    public Flux<MovieInfo> findAll(Collection<String> fields) {
+        return find(new Query(), fields);
+    }
+
+    @Override
+    public Flux<MovieInfo> findAllById(Iterable<String> ids, Collection<String> fields) {
+        var idList = new ArrayList<String>();
+        ids.forEach(idList::add);
+        return find(Query.query(Criteria.where("_id").in(idList)), fields);
+    }
+
+    @Override
+    public Flux<MovieInfo> findByYear(Integer year, Collection<String> fields) {
+        return find(Query.query(Criteria.where("year").is(year)), fields);
+    }
+
+    @Override
+    public Flux<MovieInfo> findByName(String name, Collection<String> fields) {
+        return find(Query.query(Criteria.where("name").is(name)), fields);
+    }
+
+    @Override
+    public Flux<MovieInfo> findPage(Integer year, MovieInfoSort sort, MovieInfoCursor after, int limit,
+                                    Collection<String> fields) {
+
+        var criteria = new ArrayList<Criteria>();
+        if (year != null) {
+            criteria.add(Criteria.where("year").is(year));
+        }
+        if (after != null) {
+            criteria.add(after(sort, after));
+        }
+        var query = new Query(criteria.isEmpty() ? new Criteria() : new Criteria().andOperator(criteria.toArray(new Criteria[0])))
+                .with(sort.getSort())
+                .limit(limit);
+        return find(query, projected(fields, sort));
+    }
+
+    @Override
+    public Flux<MovieInfo> streamAll(Integer year, Collection<String> fields) {
+
+        var query = (year == null ? new Query() : Query.query(Criteria.where("year").is(year)))
+                .with(MovieInfoSort.ID.getSort())
+                .cursorBatchSize(STREAM_BATCH_SIZE);
+        return find(query, fields);
+    }
+
+    @Override
+    public Flux<MovieInfo> findByNamePrefix(String prefix, int offset, int limit) {
+
+        // a range rather than a regex, so the bounds come straight from the index
+        var key = MovieInfoIndexes.nameKey(prefix);
+        var range = Criteria.where(MovieInfoIndexes.NAME_KEY).gte(key);
+        var end = prefixEnd(key);
+        if (end != null) {
+            range.lt(end);
+        }
+        var query = Query.query(range)
+                .with(Sort.by(MovieInfoIndexes.NAME_KEY, "_id"))
+                .skip(offset)
+                .limit(limit);
+        return find(query, null);
+    }
+
+    /**
+     * The smallest string above every string starting with {@code prefix}, in the code point order
+     * Mongo compares strings in: the prefix with its last code point incremented. A last code
+     * point that can not be incremented is dropped and the one before it incremented instead.
+     * Null when there is no such string.
+     */
+    static String prefixEnd(String prefix) {
+
+        var codePoints = prefix.codePoints().toArray();
+        for (int last = codePoints.length - 1; last >= 0; last--) {
+            var next = codePoints[last] + 1;
+            if (next == Character.MIN_SURROGATE) {
+                next = Character.MAX_SURROGATE + 1;
+            }
+            if (next <= Character.MAX_CODE_POINT) {
+                codePoints[last] = next;
+                return new String(codePoints, 0, last + 1);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Flux<MovieInfo> searchText(String terms, int offset, int limit) {
+
+        var query = TextQuery.queryText(TextCriteria.forDefaultLanguage().matching(terms))
+                .sortByScore()
+                .skip(offset)
+                .limit(limit);
+        return find(query, null);
+    }
+
+    @Override
+    public Mono<MovieInfo> findAndModify(String id, Long expectedVersion, Update update) {
+
+        var set = update.getUpdateObject().get("$set", Document.class);
+        if (set != null && set.containsKey("name")) {
+            update.set(MovieInfoIndexes.NAME_KEY, MovieInfoIndexes.nameKey(set.getString("name")));
+        }
+        var criteria = Criteria.where("_id").is(id);
+        if (expectedVersion != null) {
+            criteria.and("version").is(expectedVersion);
+        }
+        return reactiveMongoTemplate.findAndModify(Query.query(criteria), update,
+                FindAndModifyOptions.options().returnNew(true), MovieInfo.class);
+    }
+
+    @Override
+    public Mono<Boolean> removeById(String id) {
+
+        return reactiveMongoTemplate.remove(Query.query(Criteria.where("_id").is(id)), MovieInfo.class)
+                .map(deleteResult -> deleteResult.getDeletedCount() > 0);
+    }
+
+    private Criteria after(MovieInfoSort sort, MovieInfoCursor cursor) {
+
+        if (sort == MovieInfoSort.ID) {
+            return idAfter(cursor.getMovieInfoId());
+        }
+        var key = cursor.getKeyValue();
+        // movie infos without the key sort first, so the ones with it all come after
+        if (key == null) {
+            return new Criteria().orOperator(
+                    new Criteria().andOperator(Criteria.where(sort.getKey()).is(null), idAfter(cursor.getMovieInfoId())),
+                    Criteria.where(sort.getKey()).ne(null));
+        }
+        return new Criteria().orOperator(
+                Criteria.where(sort.getKey()).gt(key),
+                new Criteria().andOperator(Criteria.where(sort.getKey()).is(key), idAfter(cursor.getMovieInfoId())));
+    }
+
+    /**
+     * Ids are stored as ObjectIds when they look like one and as strings otherwise, and Mongo
+     * sorts every string before every ObjectId. A range on one type never matches the other, so
+     * moving from the strings into the ObjectIds has to be spelled out.
+     */
+    private Criteria idAfter(String movieInfoId) {
+
+        if (ObjectId.isValid(movieInfoId)) {
+            return Criteria.where("_id").gt(new ObjectId(movieInfoId));
+        }
+        return new Criteria().orOperator(Criteria.where("_id").gt(movieInfoId), Criteria.where("_id").type(OBJECT_ID));
+    }
+
+    /**
+     * The page needs the sort key of its last movie info for the next cursor.
+     */
+    private Collection<String> projected(Collection<String> fields, MovieInfoSort sort) {
+
+        if (fields == null || sort == MovieInfoSort.ID) {
+            return fields;
+        }
+        var projected = new LinkedHashSet<>(fields);
+        projected.add(sort == MovieInfoSort.NAME ? "name" : sort.getKey());
+        return projected;
+    }
+
+    /**
+     * Without {@code fields} whole movie infos are read.
+     */
+    private Flux<MovieInfo> find(Query query, Collection<String> fields) {
+
+        if (fields != null) {
+            fields.forEach(field -> query.fields().include(field));
+        }
+        return Flux.deferContextual(context -> {
+            var deadline = RequestDeadline.from(context);
+            if (deadline.isPresent()) {
+                if (deadline.get().isExpired()) {
+                    return Flux.error(new DeadlineExceededException("Request deadline passed before querying movie infos"));
+                }
+                // maxTimeMS of 0 means no limit, so never go below a millisecond
+                query.maxTime(Duration.ofMillis(Math.max(1, deadline.get().remaining().toMillis())));
+            }
+            return reactiveMongoTemplate.find(query, MovieInfo.class);
+        });
+    }
+}
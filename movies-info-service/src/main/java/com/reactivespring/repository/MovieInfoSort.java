@@ -0,0 +1,38 @@
+package com.reactivespring.repository;
+
+import org.springframework.data.domain.Sort;
+
+import java.util.Locale;
+
+/**
+ * Orders movie infos can be listed in. Every order ends with {@code _id} so that a movie info is
+ * identified by its position and the next page can continue right after it.
+ */
+public enum MovieInfoSort {
+
+    ID("_id"),
+    YEAR("year"),
+    RELEASE_DATE("release_date"),
+    NAME(MovieInfoIndexes.NAME_KEY);
+
+    private final String key;
+
+    MovieInfoSort(String key) {
+        this.key = key;
+    }
+
+    /**
+     * The stored field sorted on ahead of {@code _id}, {@code _id} itself for {@link #ID}.
+     */
+    public String getKey() {
+        return key;
+    }
+
+    public Sort getSort() {
+        return this == ID ? Sort.by("_id") : Sort.by(key, "_id");
+    }
+
+    public static MovieInfoSort from(String name) {
+        return valueOf(name.trim().toUpperCase(Locale.ROOT));
+    }
+}
@@ -1,58 +1,191 @@
 package com.reactivespring.service;
 
+import com.reactivespring.cache.MovieInfoCache;
+import com.reactivespring.cache.MovieInfoInvalidations;
 import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.exception.MovieInfoConflictException;
+import com.reactivespring.repository.MovieInfoCursor;
 import com.reactivespring.repository.MovieInfoRepository;
+import com.reactivespring.repository.MovieInfoRepositoryCustom;
+import com.reactivespring.repository.MovieInfoSort;
+import com.reactivespring.stream.MovieInfoChange;
+import com.reactivespring.stream.MovieInfoFeed;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import javax.validation.ConstraintViolation;
+import javax.validation.ConstraintViolationException;
+import javax.validation.Validator;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 @Service
 public class MoviesInfoService {
     MovieInfoRepository movieInfoRepository;
-
-    public MoviesInfoService(MovieInfoRepository movieInfoRepository) {
+    MovieInfoCache movieInfoCache;
+    MovieInfoInvalidations movieInfoInvalidations;
+    MovieInfoFeed movieInfoFeed;
+    Validator validator;
+
+    public MoviesInfoService(MovieInfoRepository movieInfoRepository, MovieInfoCache movieInfoCache,
+                             MovieInfoInvalidations movieInfoInvalidations, MovieInfoFeed movieInfoFeed,
+                             Validator validator) {
         this.movieInfoRepository = movieInfoRepository;
+        this.movieInfoCache = movieInfoCache;
+        this.movieInfoInvalidations = movieInfoInvalidations;
+        this.movieInfoFeed = movieInfoFeed;
+        this.validator = validator;
     }
 
     public Mono<MovieInfo> addMovieInfo(MovieInfo movieInfo) {
 
-        return movieInfoRepository.save(movieInfo).log();
+        return movieInfoRepository.save(movieInfo).log()
+                .doOnNext(added -> movieInfoFeed.local(MovieInfoChange.added(added)))
+                .flatMap(this::written);
+    }
+
+    /**
+     * A page of movie infos, of {@code year} if given, see {@link MovieInfoRepositoryCustom#findPage}.
+     */
+    public Flux<MovieInfo> getMovieInfoPage(Integer year, MovieInfoSort sort, MovieInfoCursor after, int limit,
+                                            Collection<String> fields) {
+
+        return movieInfoRepository.findPage(year, sort, after, limit, fields);
     }
 
-    public Flux<MovieInfo> getAllMovieInfos() {
+    /**
+     * Every movie info, of {@code year} if given, read as fast as the caller takes them.
+     */
+    public Flux<MovieInfo> exportMovieInfos(Integer year, Collection<String> fields) {
 
-        return movieInfoRepository.findAll();
+        return movieInfoRepository.streamAll(year, fields);
     }
 
+    /**
+     * A page of the movie infos matching {@code query}: by name prefix, ignoring case, or with
+     * {@code fullText} by the words of the name and cast, best match first.
+     */
+    public Flux<MovieInfo> searchMovieInfos(String query, boolean fullText, int offset, int limit) {
+
+        if (fullText) {
+            return movieInfoRepository.searchText(query, offset, limit);
+        }
+        return movieInfoRepository.findByNamePrefix(query, offset, limit);
+    }
+
+    /**
+     * Served from the {@link MovieInfoCache} when it is on.
+     */
     public Mono<MovieInfo> getMovieInfoById(String id) {
 
-        return movieInfoRepository.findById(id);
+        return movieInfoCache.get(id, movieInfoRepository.findById(id));
+    }
+
+    public Flux<MovieInfo> getMovieInfosByIds(List<String> ids, Collection<String> fields) {
+
+        return movieInfoRepository.findAllById(ids, fields);
     }
 
     public Mono<MovieInfo> updateMovieInfoById(String id, MovieInfo updatedMovieInfo) {
 
-        return movieInfoRepository.findById(id)
-                .flatMap(movieInfo -> {
-                    movieInfo.setYear(updatedMovieInfo.getYear());
-                    movieInfo.setCast(updatedMovieInfo.getCast());
-                    movieInfo.setName(updatedMovieInfo.getName());
-                    movieInfo.setRelease_date(updatedMovieInfo.getRelease_date());
-                    return movieInfoRepository.save(movieInfo);
-                });
+        return modifyMovieInfo(id, updatedMovieInfo, false, updatedMovieInfo.getVersion());
+    }
+
+    /**
+     * Every constraint of a movie info is on a single field, so only the fields sent are
+     * validated, against the same annotations as a POST, and the write stays one findAndModify.
+     */
+    public Mono<MovieInfo> patchMovieInfoById(String id, MovieInfo changes) {
+
+        return Mono.defer(() -> {
+            var violations = new HashSet<ConstraintViolation<MovieInfo>>();
+            validateField("name", changes.getName(), violations);
+            validateField("year", changes.getYear(), violations);
+            validateField("cast", changes.getCast(), violations);
+            validateField("release_date", changes.getRelease_date(), violations);
+            if (!violations.isEmpty()) {
+                return Mono.error(new ConstraintViolationException(violations));
+            }
+            return modifyMovieInfo(id, changes, true, changes.getVersion());
+        });
+    }
+
+    private void validateField(String field, Object value, Set<ConstraintViolation<MovieInfo>> violations) {
+
+        if (value != null) {
+            violations.addAll(validator.validateValue(MovieInfo.class, field, value));
+        }
+    }
+
+    /**
+     * Writes the changes with a single findAndModify that also bumps the version. When an
+     * expected version is given and the movie info has moved on, fails with a conflict; empty
+     * when there is no such movie info.
+     */
+    private Mono<MovieInfo> modifyMovieInfo(String id, MovieInfo changes, boolean partial, Long expectedVersion) {
+
+        var update = new Update().inc("version", 1L);
+        if (!partial || changes.getName() != null) {
+            update.set("name", changes.getName());
+        }
+        if (!partial || changes.getYear() != null) {
+            update.set("year", changes.getYear());
+        }
+        if (!partial || changes.getCast() != null) {
+            update.set("cast", changes.getCast());
+        }
+        if (!partial || changes.getRelease_date() != null) {
+            update.set("release_date", changes.getRelease_date());
+        }
+
+        return movieInfoRepository.findAndModify(id, expectedVersion, update)
+                .doOnNext(updated -> movieInfoFeed.local(MovieInfoChange.updated(updated)))
+                .flatMap(this::written)
+                .switchIfEmpty(Mono.defer(() -> expectedVersion == null
+                        ? Mono.empty()
+                        : movieInfoRepository.existsById(id)
+                        .flatMap(exists -> exists
+                                ? Mono.error(new MovieInfoConflictException("MovieInfo " + id + " is no longer at version " + expectedVersion))
+                                : Mono.empty())));
     }
 
     public Mono<Void> deleteMovieInfoById(String id) {
 
-        return movieInfoRepository.deleteById(id);
+        return movieInfoRepository.removeById(id)
+                .doOnNext(removed -> {
+                    movieInfoCache.invalidate(id);
+                    // deleting a movie info that is not there changes nothing the feed carries
+                    if (removed) {
+                        movieInfoFeed.local(MovieInfoChange.deleted(id));
+                    }
+                })
+                .then(movieInfoInvalidations.publish(id));
+    }
+
+    /**
+     * Caches a movie info just written and tells the other instances to drop their copy.
+     */
+    private Mono<MovieInfo> written(MovieInfo movieInfo) {
+
+        movieInfoCache.put(movieInfo);
+        return movieInfoInvalidations.publish(movieInfo.getMovieInfoId())
+                .thenReturn(movieInfo);
     }
 
-    public Flux<MovieInfo> getMovieInfoByYear(Integer year) {
+    public Flux<MovieInfo> getMovieInfoByName(String name, Collection<String> fields) {
 
-        return movieInfoRepository.findByYear(year);
+        return movieInfoRepository.findByName(name, fields);
     }
 
-    public Flux<MovieInfo> getMovieInfoByName(String name) {
+    /**
+     * The changes after {@code after}, then the live ones, see {@link MovieInfoFeed}.
+     */
+    public Flux<MovieInfoChange> streamMovieInfoChanges(Long after) {
 
-        return movieInfoRepository.findByName(name);
+        return movieInfoFeed.subscribe(after);
     }
 }
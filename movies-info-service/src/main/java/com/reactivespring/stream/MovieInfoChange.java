@@ -0,0 +1,50 @@
+package com.reactivespring.stream;
+
+import com.reactivespring.domain.MovieInfo;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One entry of the movie info change feed. {@code movieInfo} is the movie info after the write
+ * and is {@code null} for deletes, which only carry the id. A {@code RESET} tells the subscriber
+ * that changes were missed and it should read the movie infos again, resuming after its
+ * {@code sequence}.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MovieInfoChange {
+
+    public enum Type {
+        ADD,
+        UPDATE,
+        DELETE,
+        RESET
+    }
+
+    private long sequence;
+    private Type type;
+    private String movieInfoId;
+    private MovieInfo movieInfo;
+
+    public static MovieInfoChange added(MovieInfo movieInfo) {
+        return new MovieInfoChange(0, Type.ADD, movieInfo.getMovieInfoId(), movieInfo);
+    }
+
+    public static MovieInfoChange updated(MovieInfo movieInfo) {
+        return new MovieInfoChange(0, Type.UPDATE, movieInfo.getMovieInfoId(), movieInfo);
+    }
+
+    public static MovieInfoChange deleted(String movieInfoId) {
+        return new MovieInfoChange(0, Type.DELETE, movieInfoId, null);
+    }
+
+    static MovieInfoChange reset(long sequence) {
+        return new MovieInfoChange(sequence, Type.RESET, null, null);
+    }
+
+    MovieInfoChange withSequence(long sequence) {
+        return new MovieInfoChange(sequence, type, movieInfoId, movieInfo);
+    }
+}
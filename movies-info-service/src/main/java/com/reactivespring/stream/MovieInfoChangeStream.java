@@ -0,0 +1,108 @@
+package com.reactivespring.stream;
+
+import com.mongodb.client.model.changestream.FullDocument;
+import com.reactivespring.domain.MovieInfo;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonValue;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.ChangeStreamEvent;
+import org.springframework.data.mongodb.core.ChangeStreamOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.util.retry.Retry;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Follows the movie info collection through one Mongo change stream per instance and hands every
+ * write, whichever instance made it, to the {@link MovieInfoFeed}. The stream starts at the
+ * cluster time the feed started at, and a reopened one at the last change handed over, so
+ * nothing in between is lost. Needs a replica set.
+ */
+@Component
+@ConditionalOnProperty(name = "movieinfos.events.changeStream.enabled", havingValue = "true")
+@Slf4j
+public class MovieInfoChangeStream {
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final MovieInfoFeed movieInfoFeed;
+    private Disposable subscription;
+
+    public MovieInfoChangeStream(ReactiveMongoTemplate reactiveMongoTemplate, MovieInfoFeed movieInfoFeed) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.movieInfoFeed = movieInfoFeed;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+
+        log.info("Following movie info changes");
+        subscription = watch().subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+
+    Flux<MovieInfoChange> watch() {
+
+        return Flux.defer(() -> changes(movieInfoFeed.getLatest()))
+                .map(this::toChange)
+                .filter(Optional::isPresent)
+                .map(Optional::get)
+                .doOnNext(movieInfoFeed::dispatch)
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                        .maxBackoff(Duration.ofSeconds(30))
+                        .doBeforeRetry(signal -> log.warn("Movie info change stream failed, reopening it", signal.failure())));
+    }
+
+    private Flux<ChangeStreamEvent<MovieInfo>> changes(long after) {
+
+        var options = ChangeStreamOptions.builder()
+                .filter(Aggregation.newAggregation(
+                        Aggregation.match(Criteria.where("operationType").in("insert", "update", "replace", "delete"))))
+                .fullDocumentLookup(FullDocument.UPDATE_LOOKUP)
+                // the change at the latest sequence comes again and is skipped by the feed
+                .resumeAt(MovieInfoFeed.clusterTimeOf(after))
+                .build();
+        return reactiveMongoTemplate.changeStream(reactiveMongoTemplate.getCollectionName(MovieInfo.class),
+                options, MovieInfo.class);
+    }
+
+    private Optional<MovieInfoChange> toChange(ChangeStreamEvent<MovieInfo> event) {
+
+        var raw = event.getRaw();
+        if (raw == null || raw.getClusterTime() == null || event.getOperationType() == null) {
+            return Optional.empty();
+        }
+        var sequence = MovieInfoFeed.sequenceOf(raw.getClusterTime());
+        switch (event.getOperationType()) {
+            case INSERT:
+                return Optional.ofNullable(event.getBody()).map(movieInfo -> MovieInfoChange.added(movieInfo).withSequence(sequence));
+            case UPDATE:
+            case REPLACE:
+                return Optional.ofNullable(event.getBody()).map(movieInfo -> MovieInfoChange.updated(movieInfo).withSequence(sequence));
+            case DELETE:
+                return Optional.ofNullable(raw.getDocumentKey())
+                        .map(documentKey -> MovieInfoChange.deleted(idOf(documentKey.get("_id"))).withSequence(sequence));
+            default:
+                return Optional.empty();
+        }
+    }
+
+    private String idOf(BsonValue id) {
+        return id.isObjectId() ? id.asObjectId().getValue().toHexString() : id.asString().getValue();
+    }
+}
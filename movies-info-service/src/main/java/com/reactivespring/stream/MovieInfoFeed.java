@@ -0,0 +1,214 @@
+package com.reactivespring.stream;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonTimestamp;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.util.concurrent.Queues;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The movie info change feed. Every change gets a sequence number and the feed keeps the last
+ * {@code movieinfos.stream.history} of them, so a subscriber resuming after a sequence it read
+ * first gets the changes it missed. One resuming from further back, or from a sequence this feed
+ * never handed out, gets a {@code RESET} instead.
+ * <p>
+ * By default the changes are the writes of this instance, numbered on from the start time of the
+ * run so that the sequences of an earlier run are told apart. Writes through other instances never
+ * reach it, so this only suits a single instance. With
+ * {@code movieinfos.events.changeStream.enabled} the writes of all instances arrive through
+ * {@link MovieInfoChangeStream}, numbered by their cluster time, which every instance agrees on.
+ * Either way sequences stay below 2^53 and survive JSON numbers.
+ * <p>
+ * Each subscriber reads through its own buffer of {@code movieinfos.stream.bufferSize} changes.
+ * Dropping a change would leave the subscriber's copy wrong without telling it, so one that fills
+ * its buffer is disconnected instead, and resumes from the last sequence it read. Changes are
+ * numbered and kept under the lock but emitted outside it, queued in order and emitted by
+ * whichever writer finds the queue idle, so a write never waits on the subscribers.
+ */
+@Component
+@Slf4j
+public class MovieInfoFeed {
+
+    // cluster time seconds times this plus the increment within the second
+    private static final long INCREMENTS_PER_SECOND = 1_000_000L;
+
+    private final boolean changeStreamEnabled;
+    private final int bufferSize;
+    private final MovieInfoChange[] history;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final Queue<MovieInfoChange> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger draining = new AtomicInteger();
+    private final Counter disconnected;
+    // guarded by this: every change after floor up to latest is in the history
+    private long floor;
+    private long latest;
+    private int next;
+
+    public MovieInfoFeed(@Value("${movieinfos.events.changeStream.enabled:false}") boolean changeStreamEnabled,
+                         @Value("${movieinfos.stream.history:1000}") int history,
+                         @Value("${movieinfos.stream.bufferSize:256}") int bufferSize,
+                         MeterRegistry meterRegistry) {
+        this.changeStreamEnabled = changeStreamEnabled;
+        this.bufferSize = bufferSize;
+        this.history = new MovieInfoChange[history];
+        this.floor = Instant.now().getEpochSecond() * INCREMENTS_PER_SECOND;
+        this.latest = floor;
+        if (!changeStreamEnabled) {
+            log.warn("The movie info change feed only carries the writes made through this instance; "
+                    + "enable movieinfos.events.changeStream for it to carry those of every instance");
+        }
+        Gauge.builder("movieinfos.stream.subscribers", subscribers, Set::size)
+                .description("Live movie info change feed subscribers")
+                .register(meterRegistry);
+        this.disconnected = Counter.builder("movieinfos.stream.disconnected")
+                .description("Subscribers disconnected for falling behind")
+                .register(meterRegistry);
+    }
+
+    /**
+     * A write made through this instance.
+     */
+    public void local(MovieInfoChange change) {
+
+        if (changeStreamEnabled) {
+            return;
+        }
+        synchronized (this) {
+            append(change.withSequence(latest + 1));
+        }
+        drain();
+    }
+
+    /**
+     * Hands the change to the subscribers; a change at or before the latest one was handed over
+     * already and is skipped.
+     */
+    void dispatch(MovieInfoChange change) {
+
+        synchronized (this) {
+            append(change);
+        }
+        drain();
+    }
+
+    // guarded by this
+    private void append(MovieInfoChange change) {
+
+        if (change.getSequence() <= latest) {
+            return;
+        }
+        var evicted = history[next];
+        if (evicted != null) {
+            floor = evicted.getSequence();
+        }
+        history[next] = change;
+        next = (next + 1) % history.length;
+        latest = change.getSequence();
+        pending.offer(change);
+    }
+
+    private void drain() {
+
+        if (draining.getAndIncrement() != 0) {
+            return;
+        }
+        // the sinks only ever see one emitting thread, so an emission can only fail on overflow
+        do {
+            MovieInfoChange change;
+            while ((change = pending.poll()) != null) {
+                emit(change);
+            }
+        } while (draining.decrementAndGet() != 0);
+    }
+
+    private void emit(MovieInfoChange change) {
+
+        subscribers.forEach(subscriber -> {
+            // one that subscribed after the change was kept got it with the changes it missed
+            if (change.getSequence() <= subscriber.since) {
+                return;
+            }
+            if (subscriber.sink.tryEmitNext(change) == Sinks.EmitResult.FAIL_OVERFLOW) {
+                log.info("Disconnecting a movie info feed subscriber that fell {} changes behind", bufferSize);
+                disconnected.increment();
+                subscribers.remove(subscriber);
+                subscriber.sink.tryEmitComplete();
+            }
+        });
+    }
+
+    /**
+     * The changes after {@code after}, then the live ones; only the live ones without it.
+     */
+    public Flux<MovieInfoChange> subscribe(Long after) {
+
+        return Flux.defer(() -> {
+            Subscriber subscriber;
+            List<MovieInfoChange> missed;
+            synchronized (this) {
+                missed = missed(after);
+                subscriber = new Subscriber(latest, bufferSize);
+                subscribers.add(subscriber);
+            }
+            return Flux.fromIterable(missed)
+                    .concatWith(subscriber.sink.asFlux())
+                    .doFinally(signal -> subscribers.remove(subscriber));
+        });
+    }
+
+    private List<MovieInfoChange> missed(Long after) {
+
+        if (after == null || after == latest) {
+            return List.of();
+        }
+        if (after < floor || after > latest) {
+            return List.of(MovieInfoChange.reset(latest));
+        }
+        var missed = new ArrayList<MovieInfoChange>();
+        for (int i = 0; i < history.length; i++) {
+            var change = history[(next + i) % history.length];
+            if (change != null && change.getSequence() > after) {
+                missed.add(change);
+            }
+        }
+        return missed;
+    }
+
+    synchronized long getLatest() {
+        return latest;
+    }
+
+    static long sequenceOf(BsonTimestamp clusterTime) {
+        return clusterTime.getTime() * INCREMENTS_PER_SECOND + clusterTime.getInc();
+    }
+
+    static BsonTimestamp clusterTimeOf(long sequence) {
+        return new BsonTimestamp((int) (sequence / INCREMENTS_PER_SECOND), (int) (sequence % INCREMENTS_PER_SECOND));
+    }
+
+    private static class Subscriber {
+
+        private final Sinks.Many<MovieInfoChange> sink;
+        private final long since;
+
+        private Subscriber(long since, int bufferSize) {
+            this.since = since;
+            this.sink = Sinks.many().unicast()
+                    .onBackpressureBuffer(Queues.<MovieInfoChange>get(bufferSize).get());
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.reactivespring.cache;
+
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.repository.MovieInfoRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.time.LocalDate;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"movieinfos.cache.enabled=true", "movieinfos.cache.broadcast.enabled=true"})
+@ActiveProfiles("test")
+@AutoConfigureWebTestClient
+class MovieInfoCacheIntgTest {
+
+    @Autowired
+    MovieInfoRepository movieInfoRepository;
+
+    @Autowired
+    MovieInfoCache movieInfoCache;
+
+    @Autowired
+    ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Autowired
+    WebTestClient webTestClient;
+
+    static String MOVIE_INFOS_URL = "/v1/movieinfos";
+    static String MOVIE_INFOS_ID = "123";
+
+    @BeforeEach
+    void setUp() {
+
+        movieInfoRepository.save(new MovieInfo(MOVIE_INFOS_ID, "Tails of Dogesh", 2003, List.of("Dogesh", "Dogelina"),
+                LocalDate.parse("2003-05-18"))).block();
+    }
+
+    @AfterEach
+    void teardown() {
+
+        movieInfoRepository.deleteAll().block();
+        movieInfoCache.invalidate(MOVIE_INFOS_ID);
+    }
+
+    @Test
+    void getMovieInfoById_cached() {
+
+        var hits = hits();
+        assertEquals("Tails of Dogesh", getName());
+        // changed behind the service's back, the cached one is still served
+        renameInRepository("Tails of Dogesh 2");
+
+        assertEquals("Tails of Dogesh", getName());
+        assertEquals(hits + 1, hits());
+    }
+
+    @Test
+    void updateMovieInfo_writesThrough() {
+
+        assertEquals("Tails of Dogesh", getName());
+
+        webTestClient.put()
+                .uri(MOVIE_INFOS_URL + "/{id}", MOVIE_INFOS_ID)
+                .bodyValue(new MovieInfo(null, "Tails of Dogesh 2", 2005, List.of("Dogesh"), LocalDate.parse("2005-05-18")))
+                .exchange()
+                .expectStatus()
+                .isOk();
+
+        var hits = hits();
+        assertEquals("Tails of Dogesh 2", getName());
+        assertEquals(hits + 1, hits());
+    }
+
+    @Test
+    void deleteMovieInfo_invalidates() {
+
+        assertEquals("Tails of Dogesh", getName());
+
+        webTestClient.delete()
+                .uri(MOVIE_INFOS_URL + "/{id}", MOVIE_INFOS_ID)
+                .exchange()
+                .expectStatus()
+                .isNoContent();
+
+        webTestClient.get()
+                .uri(MOVIE_INFOS_URL + "/{id}", MOVIE_INFOS_ID)
+                .exchange()
+                .expectStatus()
+                .isNotFound();
+    }
+
+    @Test
+    void invalidationFromAnotherInstance() throws InterruptedException {
+
+        assertEquals("Tails of Dogesh", getName());
+        renameInRepository("Tails of Dogesh 2");
+
+        reactiveMongoTemplate.insert(new Document("movieInfoId", MOVIE_INFOS_ID)
+                .append("origin", "another-instance")
+                .append("at", new Date()), "movieInfoInvalidations").block();
+
+        var name = getName();
+        for (int i = 0; i < 50 && !"Tails of Dogesh 2".equals(name); i++) {
+            Thread.sleep(100);
+            name = getName();
+        }
+        assertEquals("Tails of Dogesh 2", name);
+    }
+
+    private String getName() {
+
+        var movieInfo = webTestClient.get()
+                .uri(MOVIE_INFOS_URL + "/{id}", MOVIE_INFOS_ID)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(MovieInfo.class)
+                .returnResult()
+                .getResponseBody();
+        assert movieInfo != null;
+        return movieInfo.getName();
+    }
+
+    private void renameInRepository(String name) {
+
+        var movieInfo = movieInfoRepository.findById(MOVIE_INFOS_ID).block();
+        assert movieInfo != null;
+        movieInfo.setName(name);
+        movieInfoRepository.save(movieInfo).block();
+    }
+
+    private double hits() {
+
+        return meterRegistry.get("cache.gets")
+                .tag("cache", "movieInfos")
+                .tag("result", "hit")
+                .functionCounter()
+                .count();
+    }
+}
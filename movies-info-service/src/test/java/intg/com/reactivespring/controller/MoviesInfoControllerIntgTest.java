@@ -2,21 +2,38 @@ package com.reactivespring.controller;
 
 import com.reactivespring.domain.MovieInfo;
 import com.reactivespring.repository.MovieInfoRepository;
+import com.reactivespring.stream.MovieInfoChange;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
 
 import java.net.URI;
+import java.time.Duration;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
 @ActiveProfiles("test")
@@ -29,6 +46,12 @@ class MoviesInfoControllerIntgTest {
     @Autowired
     WebTestClient webTestClient;
 
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @LocalServerPort
+    int port;
+
     static String MOVIE_INFOS_URL = "/v1/movieinfos";
     static String MOVIE_INFOS_ID = "123";
     static String MOVIE_INFOS_INVALID_ID = "456";
@@ -115,6 +138,73 @@ class MoviesInfoControllerIntgTest {
                 .hasSize(2);
     }
 
+    @Test
+    void getAllMovieInfos_paginated() {
+
+        var names = new ArrayList<String>();
+        String cursor = null;
+        do {
+            var uri = MOVIE_INFOS_URL + "?sort=name&limit=2" + (cursor == null ? "" : "&cursor=" + cursor);
+            var result = webTestClient.get()
+                    .uri(uri)
+                    .exchange()
+                    .expectStatus()
+                    .isOk()
+                    .expectBodyList(MovieInfo.class)
+                    .returnResult();
+            result.getResponseBody().forEach(movieInfo -> names.add(movieInfo.getName()));
+            cursor = result.getResponseHeaders().getFirst("X-Next-Cursor");
+        } while (cursor != null);
+
+        assertEquals(List.of("Devdas", "Tails of Dogesh", "Transformers"), names);
+    }
+
+    @Test
+    void getMovieInfoByYear_sortedByReleaseDate() {
+
+        var result = webTestClient.get()
+                .uri(MOVIE_INFOS_URL + "?year=2003&sort=release_date&limit=1")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBodyList(MovieInfo.class)
+                .returnResult();
+        assertEquals("Transformers", result.getResponseBody().get(0).getName());
+        var cursor = result.getResponseHeaders().getFirst("X-Next-Cursor");
+
+        webTestClient.get()
+                .uri(MOVIE_INFOS_URL + "?year=2003&sort=release_date&limit=1&cursor={cursor}", cursor)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .doesNotExist("X-Next-Cursor")
+                .expectBodyList(MovieInfo.class)
+                .consumeWith(page -> assertEquals("Tails of Dogesh", page.getResponseBody().get(0).getName()));
+
+        // a cursor only continues the order it was handed out for
+        webTestClient.get()
+                .uri(MOVIE_INFOS_URL + "?sort=name&cursor={cursor}", cursor)
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+    }
+
+    @Test
+    void getAllMovieInfos_export() {
+
+        webTestClient.get()
+                .uri(MOVIE_INFOS_URL + "?limit=1")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .expectBodyList(MovieInfo.class)
+                .hasSize(3);
+    }
+
     @Test
     void getMovieInfoByName() {
 
@@ -132,6 +222,162 @@ class MoviesInfoControllerIntgTest {
                 .hasSize(1);
     }
 
+    @Test
+    void getMovieInfosByIds() {
+
+        var uriComponents = UriComponentsBuilder.fromUri(URI.create(MOVIE_INFOS_URL))
+                .queryParam("ids", MOVIE_INFOS_ID + "," + MOVIE_INFOS_INVALID_ID)
+                .build()
+                .toUri();
+
+        webTestClient.get()
+                .uri(uriComponents)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(MovieInfo.class)
+                .hasSize(1);
+    }
+
+    @Test
+    void getMovieInfosByIds_fields() {
+
+        webTestClient.get()
+                .uri(MOVIE_INFOS_URL + "?ids={id}&fields=year,name", MOVIE_INFOS_ID)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(1)
+                .jsonPath("$[0].movieInfoId").isEqualTo("123")
+                .jsonPath("$[0].name").isEqualTo("Tails of Dogesh")
+                .jsonPath("$[0].year").isEqualTo(2003)
+                .jsonPath("$[0].cast").doesNotExist()
+                .jsonPath("$[0].release_date").doesNotExist();
+
+        webTestClient.get()
+                .uri(MOVIE_INFOS_URL + "?fields=budget")
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+    }
+
+    @Test
+    void lookupMovieInfos() {
+
+        webTestClient.post()
+                .uri(MOVIE_INFOS_URL + "/lookup")
+                .bodyValue(List.of(MOVIE_INFOS_ID, MOVIE_INFOS_INVALID_ID))
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(MovieInfo.class)
+                .hasSize(1);
+    }
+
+    @Test
+    void lookupMovieInfos_tooManyIds() {
+
+        var ids = IntStream.rangeClosed(1, 101)
+                .mapToObj(String::valueOf)
+                .collect(Collectors.toList());
+
+        webTestClient.post()
+                .uri(MOVIE_INFOS_URL + "/lookup")
+                .bodyValue(ids)
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+    }
+
+    @Test
+    void searchMovieInfos_prefix() {
+
+        webTestClient.get()
+                .uri(MOVIE_INFOS_URL + "/search?q={q}", "t")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(2)
+                .jsonPath("$[0].name").isEqualTo("Tails of Dogesh")
+                .jsonPath("$[1].name").isEqualTo("Transformers");
+
+        webTestClient.get()
+                .uri(MOVIE_INFOS_URL + "/search?q={q}&offset=1&limit=1", "T")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(1)
+                .jsonPath("$[0].name").isEqualTo("Transformers");
+    }
+
+    @Test
+    void searchMovieInfos_prefixBeforeSupplementaryCharacter() {
+
+        movieInfoRepository.save(new MovieInfo(null, "Dogs\uD83D\uDC15", 2021, List.of("Dogesh"),
+                LocalDate.parse("2021-05-18"))).block();
+
+        webTestClient.get()
+                .uri(MOVIE_INFOS_URL + "/search?q={q}", "dogs")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(1)
+                .jsonPath("$[0].name").isEqualTo("Dogs\uD83D\uDC15");
+    }
+
+    @Test
+    void searchMovieInfos_prefixAfterPatch() {
+
+        webTestClient.patch()
+                .uri(MOVIE_INFOS_URL + "/{id}", MOVIE_INFOS_ID)
+                .bodyValue(Map.of("name", "Dogesh Returns"))
+                .exchange()
+                .expectStatus()
+                .isOk();
+
+        webTestClient.get()
+                .uri(MOVIE_INFOS_URL + "/search?q={q}", "dog")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(1)
+                .jsonPath("$[0].movieInfoId").isEqualTo(MOVIE_INFOS_ID);
+    }
+
+    @Test
+    void searchMovieInfos_text() {
+
+        webTestClient.get()
+                .uri(MOVIE_INFOS_URL + "/search?q={q}&mode=text", "optimus")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(1)
+                .jsonPath("$[0].name").isEqualTo("Transformers");
+    }
+
+    @Test
+    void searchMovieInfos_invalid() {
+
+        webTestClient.get()
+                .uri(MOVIE_INFOS_URL + "/search?q={q}&mode=fuzzy", "t")
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+
+        webTestClient.get()
+                .uri(MOVIE_INFOS_URL + "/search?q={q}&offset=5000", "t")
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+    }
+
     @Test
     void updateMovieInfoById() {
 
@@ -168,6 +414,82 @@ class MoviesInfoControllerIntgTest {
 
     }
 
+    @Test
+    void patchMovieInfoById() {
+
+        webTestClient.patch()
+                .uri(MOVIE_INFOS_URL + "/{id}", MOVIE_INFOS_ID)
+                .bodyValue(Map.of("year", 2004))
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(MovieInfo.class)
+                .consumeWith(movieInfoEntityExchangeResult -> {
+                    var result = movieInfoEntityExchangeResult.getResponseBody();
+                    assert result != null;
+                    assertEquals(2004, result.getYear());
+                    assertEquals("Tails of Dogesh", result.getName());
+                    assertEquals(1L, result.getVersion());
+                });
+    }
+
+    @Test
+    void patchMovieInfoById_versionConflict() {
+
+        webTestClient.patch()
+                .uri(MOVIE_INFOS_URL + "/{id}", MOVIE_INFOS_ID)
+                .bodyValue(Map.of("name", "First edit", "version", 0))
+                .exchange()
+                .expectStatus()
+                .isOk();
+
+        webTestClient.patch()
+                .uri(MOVIE_INFOS_URL + "/{id}", MOVIE_INFOS_ID)
+                .bodyValue(Map.of("name", "Second edit", "version", 0))
+                .exchange()
+                .expectStatus()
+                .isEqualTo(HttpStatus.CONFLICT);
+
+        assertEquals("First edit", movieInfoRepository.findById(MOVIE_INFOS_ID).block().getName());
+    }
+
+    @Test
+    void patchMovieInfoById_invalid() {
+
+        webTestClient.patch()
+                .uri(MOVIE_INFOS_URL + "/{id}", MOVIE_INFOS_ID)
+                .bodyValue(Map.of("name", " ", "year", -2004))
+                .exchange()
+                .expectStatus()
+                .isBadRequest()
+                .expectBody(String.class)
+                .isEqualTo("MovieInfo.name must not be blank,MovieInfo.year must be a positive integer");
+
+        webTestClient.patch()
+                .uri(MOVIE_INFOS_URL + "/{id}", MOVIE_INFOS_ID)
+                .bodyValue(Map.of("cast", List.of("Dogesh", "")))
+                .exchange()
+                .expectStatus()
+                .isBadRequest()
+                .expectBody(String.class)
+                .isEqualTo("MovieInfo.cast must not be blank");
+
+        var movieInfo = movieInfoRepository.findById(MOVIE_INFOS_ID).block();
+        assertEquals("Tails of Dogesh", movieInfo.getName());
+        assertEquals(0L, movieInfo.getVersion());
+    }
+
+    @Test
+    void patchMovieInfoById_notFound() {
+
+        webTestClient.patch()
+                .uri(MOVIE_INFOS_URL + "/{id}", MOVIE_INFOS_INVALID_ID)
+                .bodyValue(Map.of("year", 2004))
+                .exchange()
+                .expectStatus()
+                .isNotFound();
+    }
+
     @Test
     void getMovieInfoById_notFound() {
         webTestClient.get()
@@ -177,6 +499,136 @@ class MoviesInfoControllerIntgTest {
                 .isNotFound();
     }
 
+    @Test
+    void streamMovieInfoChanges() {
+
+        // the stream only answers with its first change, so subscribe without waiting for it
+        var changes = WebClient.create("http://localhost:" + port)
+                .get()
+                .uri(MOVIE_INFOS_URL + "/stream")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .retrieve()
+                .bodyToFlux(MovieInfoChange.class);
+        var added = new AtomicLong();
+
+        StepVerifier.create(changes)
+                .then(() -> {
+                    awaitStreamSubscribers(1);
+                    webTestClient.post()
+                            .uri(MOVIE_INFOS_URL)
+                            .bodyValue(new MovieInfo(null, "Batman Begins", 2005, List.of("Christian Bale"), LocalDate.parse("2005-06-15")))
+                            .exchange()
+                            .expectStatus()
+                            .isCreated();
+                })
+                .assertNext(change -> {
+                    assertEquals(MovieInfoChange.Type.ADD, change.getType());
+                    assertEquals("Batman Begins", change.getMovieInfo().getName());
+                    added.set(change.getSequence());
+                })
+                .then(() -> webTestClient.put()
+                        .uri(MOVIE_INFOS_URL + "/{id}", MOVIE_INFOS_ID)
+                        .bodyValue(new MovieInfo(null, "Tails of Dogesh 2", 2005, List.of("Dogesh"), LocalDate.parse("2005-05-18")))
+                        .exchange()
+                        .expectStatus()
+                        .isOk())
+                .expectNextMatches(change -> change.getType() == MovieInfoChange.Type.UPDATE
+                        && change.getMovieInfo().getName().equals("Tails of Dogesh 2"))
+                .then(() -> webTestClient.delete()
+                        .uri(MOVIE_INFOS_URL + "/{id}", MOVIE_INFOS_ID)
+                        .exchange()
+                        .expectStatus()
+                        .isNoContent())
+                .expectNextMatches(change -> change.getType() == MovieInfoChange.Type.DELETE
+                        && change.getMovieInfoId().equals(MOVIE_INFOS_ID))
+                // deleting it again deletes nothing, so the next change is the add after it
+                .then(() -> {
+                    webTestClient.delete()
+                            .uri(MOVIE_INFOS_URL + "/{id}", MOVIE_INFOS_ID)
+                            .exchange()
+                            .expectStatus()
+                            .isNoContent();
+                    webTestClient.post()
+                            .uri(MOVIE_INFOS_URL)
+                            .bodyValue(new MovieInfo(null, "The Dark Knight", 2008, List.of("Christian Bale"), LocalDate.parse("2008-07-18")))
+                            .exchange()
+                            .expectStatus()
+                            .isCreated();
+                })
+                .expectNextMatches(change -> change.getType() == MovieInfoChange.Type.ADD
+                        && change.getSequence() == added.get() + 3)
+                .thenCancel()
+                .verify(Duration.ofSeconds(10));
+
+        // an SSE client reconnecting gets what it missed after its last event id
+        var missed = WebClient.create("http://localhost:" + port)
+                .get()
+                .uri(MOVIE_INFOS_URL + "/stream")
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .header("Last-Event-ID", String.valueOf(added.get()))
+                .retrieve()
+                .bodyToFlux(new ParameterizedTypeReference<ServerSentEvent<MovieInfoChange>>() {
+                });
+
+        StepVerifier.create(missed)
+                .expectNextMatches(event -> "update".equals(event.event())
+                        && String.valueOf(added.get() + 1).equals(event.id()))
+                .expectNextMatches(event -> "delete".equals(event.event())
+                        && event.data() != null && MOVIE_INFOS_ID.equals(event.data().getMovieInfoId()))
+                .thenCancel()
+                .verify(Duration.ofSeconds(10));
+    }
+
+    private void awaitStreamSubscribers(int count) {
+
+        var subscribers = meterRegistry.get("movieinfos.stream.subscribers").gauge();
+        Mono.fromSupplier(subscribers::value)
+                .filter(value -> value >= count)
+                .repeatWhenEmpty(repeat -> repeat.delayElements(Duration.ofMillis(10)))
+                .block(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void getMovieInfoById_notModified() {
+
+        var eTag = webTestClient.get()
+                .uri(MOVIE_INFOS_URL + "/{id}", MOVIE_INFOS_ID)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .returnResult(MovieInfo.class)
+                .getResponseHeaders()
+                .getETag();
+        assert eTag != null;
+
+        webTestClient.get()
+                .uri(MOVIE_INFOS_URL + "/{id}", MOVIE_INFOS_ID)
+                .ifNoneMatch(eTag)
+                .exchange()
+                .expectStatus()
+                .isNotModified()
+                .expectBody()
+                .isEmpty();
+
+        webTestClient.patch()
+                .uri(MOVIE_INFOS_URL + "/{id}", MOVIE_INFOS_ID)
+                .bodyValue(new MovieInfo(null, null, 2005, null, null))
+                .exchange()
+                .expectStatus()
+                .isOk();
+
+        webTestClient.get()
+                .uri(MOVIE_INFOS_URL + "/{id}", MOVIE_INFOS_ID)
+                .ifNoneMatch(eTag)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .value("ETag", value -> assertNotEquals(eTag, value))
+                .expectBody()
+                .jsonPath("$.year").isEqualTo(2005);
+    }
+
     @Test
     void deleteMovieInfoById() {
 
@@ -187,4 +639,26 @@ class MoviesInfoControllerIntgTest {
                 .isNoContent()
                 .expectBody(Void.class);
     }
-}
\ No newline at end of file
+
+    @Test
+    void getMovieInfoById_withDeadline() {
+        webTestClient.get()
+                .uri(MOVIE_INFOS_URL + "/{id}", MOVIE_INFOS_ID)
+                .header("X-Request-Timeout-Ms", "2000")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBody()
+                .jsonPath("$.name").isEqualTo("Tails of Dogesh");
+    }
+
+    @Test
+    void getMovieInfoById_deadlinePassed() {
+        webTestClient.get()
+                .uri(MOVIE_INFOS_URL + "/{id}", MOVIE_INFOS_ID)
+                .header("X-Request-Timeout-Ms", "0")
+                .exchange()
+                .expectStatus()
+                .isEqualTo(HttpStatus.GATEWAY_TIMEOUT);
+    }
+}
@@ -0,0 +1,103 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.MovieInfo;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs every movie info repository query and fails on a query no index serves, see {@link QueryPlans}.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@Import(QueryPlans.CommandCapture.class)
+class MovieInfoQueryPlanIntgTest {
+
+    @Autowired
+    MovieInfoRepository movieInfoRepository;
+
+    @Autowired
+    MovieInfoIndexes movieInfoIndexes;
+
+    @Autowired
+    ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @BeforeEach
+    void setUp() {
+
+        movieInfoRepository.saveAll(List.of(
+                        new MovieInfo("1", "Batman Begins", 2005, List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15")),
+                        new MovieInfo("2", "The Dark Knight", 2008, List.of("Christian Bale", "HeathLedger"), LocalDate.parse("2008-07-18")),
+                        new MovieInfo("3", "Dark Knight Rises", 2012, List.of("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20"))))
+                .blockLast();
+        QueryPlans.clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+
+        movieInfoRepository.deleteAll().block();
+    }
+
+    @Test
+    void ensureIndexes_again() {
+
+        movieInfoIndexes.ensureIndexes().block();
+
+        var indexes = reactiveMongoTemplate.indexOps(MovieInfo.class).getIndexInfo()
+                .map(IndexInfo::getName)
+                .collect(Collectors.toSet())
+                .block();
+        assertEquals(Set.of("_id_", "year_id", "release_date_id", "nameLower_id", "name", "name_cast_text"), indexes);
+    }
+
+    @Test
+    void everyQueryUsesAnIndex() {
+
+        var movieInfo = movieInfoRepository.findById("2").block();
+        movieInfoRepository.findAll().blockLast();
+        movieInfoRepository.findAllById(List.of("1", "2")).blockLast();
+        movieInfoRepository.findByYear(2005).blockLast();
+        movieInfoRepository.findByName("Batman Begins").blockLast();
+        movieInfoRepository.findAll(List.of("name")).blockLast();
+        movieInfoRepository.findAllById(List.of("1", "2"), List.of("name")).blockLast();
+        movieInfoRepository.findByYear(2005, List.of("name")).blockLast();
+        movieInfoRepository.findByName("Batman Begins", List.of("year")).blockLast();
+        for (var sort : MovieInfoSort.values()) {
+            var after = MovieInfoCursor.after(sort, movieInfo);
+            movieInfoRepository.findPage(null, sort, null, 2, null).blockLast();
+            movieInfoRepository.findPage(null, sort, after, 2, null).blockLast();
+            movieInfoRepository.findPage(2008, sort, null, 2, List.of("name")).blockLast();
+            movieInfoRepository.findPage(2008, sort, after, 2, List.of("name")).blockLast();
+        }
+        movieInfoRepository.streamAll(null, null).blockLast();
+        movieInfoRepository.streamAll(2008, List.of("name")).blockLast();
+        movieInfoRepository.findByNamePrefix("dark", 0, 10).blockLast();
+        movieInfoRepository.searchText("christian bale", 0, 10).blockLast();
+        movieInfoRepository.findAndModify("1", 0L, new Update().set("year", 2006)).block();
+        movieInfoRepository.findAndModify("1", null, new Update().set("name", "Batman Begins")).block();
+        movieInfoRepository.existsById("3").block();
+        movieInfoRepository.count().block();
+        movieInfoRepository.save(movieInfo).block();
+        movieInfoRepository.deleteById("3").block();
+
+        var collectionScans = QueryPlans.collectionScans(reactiveMongoTemplate,
+                reactiveMongoTemplate.getCollectionName(MovieInfo.class));
+        assertTrue(collectionScans.isEmpty(), "Queries without an index: " + collectionScans);
+    }
+}
@@ -1,6 +1,7 @@
 package com.reactivespring.controller;
 
 import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.repository.MovieInfoSort;
 import com.reactivespring.service.MoviesInfoService;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -16,7 +17,10 @@ import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.when;
 
 @WebFluxTest(controllers = MoviesInfoController.class)
@@ -38,7 +42,8 @@ class MoviesInfoControllerUnitTest {
                 new MovieInfo(null, "Transformers", 2003, List.of("Bumblebee", "Optimus Prime"), LocalDate.parse("2003-04-18")),
                 new MovieInfo("123", "Tails of Dogesh", 2003, List.of("Dogesh", "Dogelina"), LocalDate.parse("2003-05-18")));
 
-        when(moviesInfoServiceBean.getAllMovieInfos()).thenReturn(Flux.fromIterable(data));
+        when(moviesInfoServiceBean.getMovieInfoPage(isNull(), eq(MovieInfoSort.ID), isNull(), anyInt(), isNull()))
+                .thenReturn(Flux.fromIterable(data));
 
         webTestClient.get()
                 .uri(MOVIE_INFOS_URL)
@@ -0,0 +1,20 @@
+package com.reactivespring.repository;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class MovieInfoRepositoryCustomImplTest {
+
+    @Test
+    void prefixEnd() {
+
+        assertEquals("dogt", MovieInfoRepositoryCustomImpl.prefixEnd("dogs"));
+        assertEquals("dog\uD83D\uDC16", MovieInfoRepositoryCustomImpl.prefixEnd("dog\uD83D\uDC15"));
+        assertEquals("dog\uE000", MovieInfoRepositoryCustomImpl.prefixEnd("dog\uD7FF"));
+        assertEquals("dog\uD800\uDC00", MovieInfoRepositoryCustomImpl.prefixEnd("dog\uFFFF"));
+        assertEquals("doh", MovieInfoRepositoryCustomImpl.prefixEnd("dog\uDBFF\uDFFF"));
+        assertNull(MovieInfoRepositoryCustomImpl.prefixEnd(""));
+    }
+}
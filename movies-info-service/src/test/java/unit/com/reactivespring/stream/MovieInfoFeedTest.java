@@ -0,0 +1,120 @@
+package com.reactivespring.stream;
+
+import com.reactivespring.domain.MovieInfo;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MovieInfoFeedTest {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void subscribe_resumesAfterSequence() {
+
+        var movieInfoFeed = new MovieInfoFeed(false, 10, 16, meterRegistry);
+        movieInfoFeed.local(MovieInfoChange.added(movieInfo("1")));
+        var after = movieInfoFeed.getLatest();
+        movieInfoFeed.local(MovieInfoChange.updated(movieInfo("1")));
+        movieInfoFeed.local(MovieInfoChange.deleted("1"));
+
+        StepVerifier.create(movieInfoFeed.subscribe(after))
+                .expectNextMatches(change -> change.getType() == MovieInfoChange.Type.UPDATE
+                        && change.getSequence() == after + 1)
+                .expectNextMatches(change -> change.getType() == MovieInfoChange.Type.DELETE
+                        && change.getSequence() == after + 2)
+                .then(() -> movieInfoFeed.local(MovieInfoChange.added(movieInfo("2"))))
+                .expectNextMatches(change -> change.getMovieInfoId().equals("2") && change.getSequence() == after + 3)
+                .thenCancel()
+                .verify();
+
+        assertEquals(0.0, meterRegistry.get("movieinfos.stream.subscribers").gauge().value());
+    }
+
+    @Test
+    void subscribe_withoutSequence_onlyLiveChanges() {
+
+        var movieInfoFeed = new MovieInfoFeed(false, 10, 16, meterRegistry);
+        movieInfoFeed.local(MovieInfoChange.added(movieInfo("1")));
+
+        StepVerifier.create(movieInfoFeed.subscribe(null))
+                .then(() -> movieInfoFeed.local(MovieInfoChange.added(movieInfo("2"))))
+                .expectNextMatches(change -> change.getMovieInfoId().equals("2"))
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void subscribe_fromBeforeTheHistory_reset() {
+
+        var movieInfoFeed = new MovieInfoFeed(false, 2, 16, meterRegistry);
+        movieInfoFeed.local(MovieInfoChange.added(movieInfo("1")));
+        var after = movieInfoFeed.getLatest();
+        for (int i = 2; i <= 4; i++) {
+            movieInfoFeed.local(MovieInfoChange.added(movieInfo(String.valueOf(i))));
+        }
+
+        StepVerifier.create(movieInfoFeed.subscribe(after))
+                .expectNextMatches(change -> change.getType() == MovieInfoChange.Type.RESET
+                        && change.getSequence() == movieInfoFeed.getLatest())
+                .thenCancel()
+                .verify();
+
+        // a sequence this feed never handed out, from an earlier run say
+        StepVerifier.create(movieInfoFeed.subscribe(movieInfoFeed.getLatest() + 100))
+                .expectNextMatches(change -> change.getType() == MovieInfoChange.Type.RESET)
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void slowSubscriber_disconnected() {
+
+        var movieInfoFeed = new MovieInfoFeed(false, 100, 8, meterRegistry);
+
+        StepVerifier.create(movieInfoFeed.subscribe(null), 0)
+                .then(() -> {
+                    for (int i = 1; i <= 20; i++) {
+                        movieInfoFeed.local(MovieInfoChange.added(movieInfo(String.valueOf(i))));
+                    }
+                })
+                .thenRequest(Long.MAX_VALUE)
+                .expectNextCount(8)
+                .verifyComplete();
+
+        assertEquals(1.0, meterRegistry.get("movieinfos.stream.disconnected").counter().count());
+    }
+
+    @Test
+    void changeStream_numbersByClusterTime() {
+
+        var movieInfoFeed = new MovieInfoFeed(true, 10, 16, meterRegistry);
+        var after = movieInfoFeed.getLatest();
+        // the writes of this instance come back through the change stream
+        movieInfoFeed.local(MovieInfoChange.added(movieInfo("1")));
+        assertEquals(after, movieInfoFeed.getLatest());
+
+        var sequence = MovieInfoFeed.sequenceOf(MovieInfoFeed.clusterTimeOf(after + 5));
+        movieInfoFeed.dispatch(MovieInfoChange.added(movieInfo("1")).withSequence(sequence));
+        // delivered again by a reopened change stream
+        movieInfoFeed.dispatch(MovieInfoChange.added(movieInfo("1")).withSequence(sequence));
+
+        StepVerifier.create(movieInfoFeed.subscribe(after))
+                .expectNextMatches(change -> change.getSequence() == after + 5)
+                .expectNoEvent(Duration.ofMillis(100))
+                .thenCancel()
+                .verify();
+        assertTrue(sequence < 1L << 53);
+    }
+
+    private MovieInfo movieInfo(String id) {
+        return new MovieInfo(id, "Batman Begins", 2005, List.of("Christian Bale"), LocalDate.parse("2005-06-15"));
+    }
+}
@@ -0,0 +1,169 @@
+package com.reactivespring.cache;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.reactivespring.domain.Review;
+import com.reactivespring.stream.ReviewChange;
+import com.reactivespring.stream.ReviewChangeListener;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Keeps the encoded JSON of the first review page of each movie, the answer to the plain
+ * {@code GET /v1/reviews?movieInfoId=}. The cache is bounded by the bytes it holds. Every review
+ * write reaching {@link com.reactivespring.stream.ReviewEvents} drops the pages it touches: the
+ * page of the review's movie and, found through the ids each page holds, a page the review was
+ * moved or deleted from. Each page also keeps the version of the movie's review set it was read
+ * at, which is its ETag. A page whose version is no longer current is read again, so the writes
+ * of other instances are noticed on the next read even when change streams are off.
+ */
+@Component
+@Slf4j
+public class ReviewResponseCache implements ReviewChangeListener {
+
+    // a page filled by a read that raced with a write of its movie is not kept
+    private static final int GENERATION_STRIPES = 1024;
+
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final Cache<Long, ReviewPage> pages;
+    private final Map<String, ReviewPage> pageOfReview = new ConcurrentHashMap<>();
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+    public ReviewResponseCache(ObjectMapper objectMapper,
+                               MeterRegistry meterRegistry,
+                               @Value("${reviews.cache.enabled:false}") boolean enabled,
+                               @Value("${reviews.cache.maxBytes:67108864}") long maxBytes,
+                               @Value("${reviews.cache.expireAfter:10m}") Duration expireAfter) {
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.pages = CaffeineCacheMetrics.monitor(meterRegistry, Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((Long movieInfoId, ReviewPage page) -> page.getBody().length)
+                .expireAfterWrite(expireAfter)
+                .removalListener((Long movieInfoId, ReviewPage page, RemovalCause cause) -> forget(page))
+                .recordStats()
+                .build(), "reviewResponses");
+        Gauge.builder("reviews.cache.hit.ratio", pages, cache -> cache.stats().hitRate())
+                .description("Share of cacheable review lookups answered from the cache")
+                .register(meterRegistry);
+        Gauge.builder("reviews.cache.bytes", pages, cache -> cache.policy().eviction()
+                        .map(eviction -> eviction.weightedSize().orElse(0L))
+                        .orElse(0L))
+                .description("Encoded review bytes held by the cache")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * The cached first page of the movie when it was read at {@code version}, or the one
+     * {@code load} reads, encodes and caches. {@code load} gets the reviews of the page and the
+     * cursor of the next one, if any, and has to read them after {@code version} was read.
+     */
+    public Mono<ReviewPage> get(Long movieInfoId, String version, Mono<ReviewPage> load) {
+
+        return Mono.defer(() -> {
+            var cached = pages.getIfPresent(movieInfoId);
+            if (cached != null && cached.getVersion().equals(version)) {
+                return Mono.just(cached);
+            }
+            if (cached != null) {
+                invalidate(movieInfoId);
+            }
+            var generation = generations.get(stripe(movieInfoId));
+            // compute() runs under the same lock as the invalidation of the movie
+            return load.doOnNext(page -> pages.asMap().compute(movieInfoId, (id, current) -> {
+                if (generations.get(stripe(movieInfoId)) != generation) {
+                    return current;
+                }
+                page.getReviewIds().forEach(reviewId -> pageOfReview.put(reviewId, page));
+                return page;
+            }));
+        });
+    }
+
+    /**
+     * Encodes the first {@code limit} of the reviews read the way the uncached response would.
+     * A review read past the end of the page only decides whether there is a next cursor, but a
+     * write to it still has to drop the page.
+     */
+    public ReviewPage encode(Long movieInfoId, String version, List<Review> read, int limit, String nextCursor) {
+
+        try {
+            var reviewIds = new ArrayList<String>(read.size());
+            read.forEach(review -> reviewIds.add(review.getReviewId()));
+            var body = objectMapper.writeValueAsBytes(read.subList(0, Math.min(limit, read.size())));
+            return new ReviewPage(movieInfoId, version, body, nextCursor, reviewIds);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not encode the reviews", e);
+        }
+    }
+
+    public void invalidate(Long movieInfoId) {
+
+        if (movieInfoId == null) {
+            return;
+        }
+        generations.incrementAndGet(stripe(movieInfoId));
+        pages.invalidate(movieInfoId);
+    }
+
+    @Override
+    public void onReviewChange(ReviewChange change) {
+
+        if (!enabled) {
+            return;
+        }
+        if (change.getReview() != null) {
+            invalidate(change.getReview().getMovieInfoId());
+        }
+        var page = pageOfReview.get(change.getReviewId());
+        if (page != null) {
+            invalidate(page.getMovieInfoId());
+        }
+    }
+
+    private void forget(ReviewPage page) {
+
+        // a newer page of the same movie holding the same review keeps its entry
+        if (page != null) {
+            page.getReviewIds().forEach(reviewId -> pageOfReview.remove(reviewId, page));
+        }
+    }
+
+    private static int stripe(Long movieInfoId) {
+        return Math.floorMod(movieInfoId.hashCode(), GENERATION_STRIPES);
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class ReviewPage {
+
+        private final Long movieInfoId;
+        private final String version;
+        private final byte[] body;
+        private final String nextCursor;
+        private final List<String> reviewIds;
+    }
+}
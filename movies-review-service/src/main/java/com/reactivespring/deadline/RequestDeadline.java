@@ -0,0 +1,38 @@
+package com.reactivespring.deadline;
+
+import reactor.util.context.ContextView;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * The deadline set by {@link DeadlineWebFilter}, which the review queries pass to Mongo as their
+ * {@code maxTimeMS}.
+ */
+public class RequestDeadline {
+
+    public static final String HEADER = "X-Request-Timeout-Ms";
+    static final String CONTEXT_KEY = RequestDeadline.class.getName();
+
+    private final long deadlineNanos;
+
+    private RequestDeadline(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    public static RequestDeadline after(Duration budget) {
+        return new RequestDeadline(System.nanoTime() + budget.toNanos());
+    }
+
+    public static Optional<RequestDeadline> from(ContextView context) {
+        return context.getOrEmpty(CONTEXT_KEY);
+    }
+
+    public Duration remaining() {
+        return Duration.ofNanos(Math.max(0, deadlineNanos - System.nanoTime()));
+    }
+
+    public boolean isExpired() {
+        return deadlineNanos - System.nanoTime() <= 0;
+    }
+}
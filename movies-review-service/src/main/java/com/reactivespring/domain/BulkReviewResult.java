@@ -0,0 +1,29 @@
+package com.reactivespring.domain;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Outcome of one line of a bulk upload: the id of the created review or why it was rejected.
+ * {@code index} is the zero based position of the line in the upload.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BulkReviewResult {
+
+    private long index;
+    private String reviewId;
+    private String error;
+
+    public static BulkReviewResult created(long index, String reviewId) {
+        return new BulkReviewResult(index, reviewId, null);
+    }
+
+    public static BulkReviewResult rejected(long index, String error) {
+        return new BulkReviewResult(index, null, error);
+    }
+}
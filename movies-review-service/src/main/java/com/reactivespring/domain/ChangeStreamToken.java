@@ -0,0 +1,24 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * Last change stream position a consumer has handled, as the JSON of the Mongo resume token.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document
+public class ChangeStreamToken {
+
+    @Id
+    private String consumerId;
+    private String resumeToken;
+    private Instant updatedAt;
+}
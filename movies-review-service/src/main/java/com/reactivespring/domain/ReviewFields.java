@@ -0,0 +1,61 @@
+package com.reactivespring.domain;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * The review fields picked with {@code fields=}, {@code reviewId} always among them, written as a
+ * JSON object of just those.
+ */
+public class ReviewFields {
+
+    private static final Map<String, Function<Review, Object>> FIELDS = new LinkedHashMap<>();
+
+    static {
+        FIELDS.put("reviewId", Review::getReviewId);
+        FIELDS.put("movieInfoId", Review::getMovieInfoId);
+        FIELDS.put("comment", Review::getComment);
+        FIELDS.put("rating", Review::getRating);
+        FIELDS.put("version", Review::getVersion);
+    }
+
+    private final Set<String> names;
+
+    private ReviewFields(Set<String> names) {
+        this.names = names;
+    }
+
+    public static ReviewFields parse(String fields) {
+
+        var requested = new LinkedHashSet<String>();
+        Arrays.stream(fields.split(","))
+                .map(String::trim)
+                .filter(field -> !field.isEmpty())
+                .forEach(field -> {
+                    if (!FIELDS.containsKey(field)) {
+                        throw new IllegalArgumentException("fields must be among " + String.join(",", FIELDS.keySet()) + ": " + fields);
+                    }
+                    requested.add(field);
+                });
+        var names = new LinkedHashSet<String>();
+        FIELDS.keySet().stream()
+                .filter(field -> field.equals("reviewId") || requested.contains(field))
+                .forEach(names::add);
+        return new ReviewFields(names);
+    }
+
+    public Set<String> getNames() {
+        return names;
+    }
+
+    public Map<String, Object> trim(Review review) {
+
+        var trimmed = new LinkedHashMap<String, Object>();
+        names.forEach(field -> trimmed.put(field, FIELDS.get(field).apply(review)));
+        return trimmed;
+    }
+}
@@ -0,0 +1,45 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Rating aggregate of one movie, maintained as reviews are added, updated and deleted.
+ * {@code histogram} counts the ratings per whole point, keyed by the rounded down rating.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document
+public class ReviewStats {
+
+    @Id
+    private Long movieInfoId;
+    private long count;
+    private long ratingCount;
+    private double sum;
+    private Double min;
+    private Double max;
+    private Map<String, Long> histogram = new HashMap<>();
+    private long version;
+
+    public static ReviewStats empty(Long movieInfoId) {
+        var reviewStats = new ReviewStats();
+        reviewStats.setMovieInfoId(movieInfoId);
+        return reviewStats;
+    }
+
+    public Double getAverage() {
+        return ratingCount == 0 ? null : sum / ratingCount;
+    }
+
+    public static String bucket(Double rating) {
+        return String.valueOf((long) Math.floor(rating));
+    }
+}
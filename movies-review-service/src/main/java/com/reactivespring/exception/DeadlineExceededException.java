@@ -0,0 +1,9 @@
+package com.reactivespring.exception;
+
+public class DeadlineExceededException extends RuntimeException {
+    private String message;
+    public DeadlineExceededException(String s) {
+        super(s);
+        this.message=s;
+    }
+}
@@ -1,34 +1,87 @@
 package com.reactivespring.handler;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.reactivespring.cache.ReviewResponseCache;
+import com.reactivespring.domain.BulkReviewResult;
 import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewFields;
+import com.reactivespring.exception.ReviewConflictException;
 import com.reactivespring.exception.ReviewDataException;
 import com.reactivespring.exception.ReviewNotFoundException;
+import com.reactivespring.repository.ReviewCursor;
 import com.reactivespring.repository.ReviewReactiveRepository;
+import com.reactivespring.repository.ReviewSort;
+import com.reactivespring.service.ReviewStatsService;
+import com.reactivespring.stream.ReviewBroadcaster;
+import com.reactivespring.stream.ReviewChange;
+import com.reactivespring.stream.ReviewEvents;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.codec.CodecException;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.server.ServerRequest;
 import org.springframework.web.reactive.function.server.ServerResponse;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.publisher.Sinks;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
 
 import javax.validation.ConstraintViolation;
 import javax.validation.Validator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Component
 @Slf4j
 public class ReviewHandler {
 
-    Sinks.Many<Review> reviewsSink = Sinks.many().replay().latest();
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    @Value("${reviews.page.defaultLimit:100}")
+    private int defaultLimit;
+    @Value("${reviews.page.maxLimit:500}")
+    private int maxLimit;
+    @Value("${reviews.lookup.maxIds:100}")
+    private int lookupMaxIds;
+    @Value("${reviews.bulk.batchSize:500}")
+    private int bulkBatchSize;
+    @Value("${reviews.bulk.concurrency:2}")
+    private int bulkConcurrency;
     @Autowired
     private Validator validator;
+    @Autowired
+    private ObjectMapper objectMapper;
     private ReviewReactiveRepository reviewReactiveRepository;
+    private ReviewStatsService reviewStatsService;
+    private ReviewBroadcaster reviewBroadcaster;
+    private ReviewEvents reviewEvents;
+    private ReviewResponseCache reviewResponseCache;
 
-    public ReviewHandler(ReviewReactiveRepository reviewReactiveRepository) {
+    public ReviewHandler(ReviewReactiveRepository reviewReactiveRepository, ReviewStatsService reviewStatsService,
+                         ReviewBroadcaster reviewBroadcaster, ReviewEvents reviewEvents,
+                         ReviewResponseCache reviewResponseCache) {
         this.reviewReactiveRepository = reviewReactiveRepository;
+        this.reviewStatsService = reviewStatsService;
+        this.reviewBroadcaster = reviewBroadcaster;
+        this.reviewEvents = reviewEvents;
+        this.reviewResponseCache = reviewResponseCache;
     }
 
     public Mono<ServerResponse> addReview(ServerRequest request) {
@@ -36,37 +89,356 @@ public class ReviewHandler {
         return request.bodyToMono(Review.class)
                 .doOnNext(this::validate)
                 .flatMap(reviewReactiveRepository::save)
+                .flatMap(review -> reviewStatsService.recordAdded(review).thenReturn(review))
                 .doOnNext(review -> {
-                    reviewsSink.tryEmitNext(review);
+                    reviewEvents.local(ReviewChange.inserted(review));
                 })
                 .flatMap(ServerResponse.status(HttpStatus.CREATED)::bodyValue);
     }
 
-    private void validate(Review review) {
+    /**
+     * Streams back one {@link BulkReviewResult} per uploaded review. Valid reviews are written in
+     * batches of {@code reviews.bulk.batchSize} with at most {@code reviews.bulk.concurrency}
+     * batches in flight; the upload is only read as fast as the batches are written. Lines are
+     * read one by one, so a line that is not a review is rejected on its own.
+     */
+    public Mono<ServerResponse> addReviews(ServerRequest request) {
 
-        var constraintViolations = validator.validate(review);
-        log.info("ConstraintViolations: {}", constraintViolations);
-        if (constraintViolations.size() > 0) {
-            var errorMessage = constraintViolations
-                    .stream()
-                    .map(ConstraintViolation::getMessage)
-                    .sorted()
-                    .collect(Collectors.joining(","));
+        var results = request.bodyToFlux(String.class)
+                .filter(line -> !line.isBlank())
+                .index()
+                .buffer(bulkBatchSize)
+                .flatMapSequential(this::insertBatch, bulkConcurrency, 1);
+
+        return ServerResponse.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(results, BulkReviewResult.class);
+    }
+
+    private Flux<BulkReviewResult> insertBatch(List<Tuple2<Long, String>> batch) {
+
+        var errors = new HashMap<Long, String>();
+        var valid = new ArrayList<Tuple2<Long, Review>>();
+        batch.forEach(line -> {
+            try {
+                var review = objectMapper.readValue(line.getT2(), Review.class);
+                var error = validationError(review);
+                if (error == null) {
+                    valid.add(Tuples.of(line.getT1(), review));
+                } else {
+                    errors.put(line.getT1(), error);
+                }
+            } catch (JsonProcessingException e) {
+                errors.put(line.getT1(), "Review could not be read: " + e.getOriginalMessage());
+            }
+        });
+
+        var insert = valid.isEmpty()
+                ? Mono.just(Map.<Integer, String>of())
+                : reviewReactiveRepository.insertUnordered(valid.stream().map(Tuple2::getT2).collect(Collectors.toList()));
+
+        return insert.flatMapMany(insertErrors -> {
+            insertErrors.forEach((position, error) -> errors.put(valid.get(position).getT1(), error));
+            var inserted = valid.stream()
+                    .filter(item -> !errors.containsKey(item.getT1()))
+                    .map(Tuple2::getT2)
+                    .collect(Collectors.toList());
+
+            var reviewIds = valid.stream()
+                    .collect(Collectors.toMap(Tuple2::getT1, item -> item.getT2().getReviewId()));
+
+            return reviewStatsService.recordAdded(inserted)
+                    .doOnSuccess(v -> inserted.forEach(review -> reviewEvents.local(ReviewChange.inserted(review))))
+                    .thenMany(Flux.fromIterable(batch))
+                    .map(line -> errors.containsKey(line.getT1())
+                            ? BulkReviewResult.rejected(line.getT1(), errors.get(line.getT1()))
+                            : BulkReviewResult.created(line.getT1(), reviewIds.get(line.getT1())));
+        });
+    }
 
+    private void validate(Review review) {
+
+        var errorMessage = validationError(review);
+        if (errorMessage != null) {
             throw new ReviewDataException(errorMessage);
         }
     }
 
+    private String validationError(Review review) {
+
+        return validationError(validator.validate(review));
+    }
+
+    private String validationError(Set<ConstraintViolation<Review>> constraintViolations) {
+
+        log.info("ConstraintViolations: {}", constraintViolations);
+        if (constraintViolations.isEmpty()) {
+            return null;
+        }
+        return constraintViolations
+                .stream()
+                .map(ConstraintViolation::getMessage)
+                .sorted()
+                .collect(Collectors.joining(","));
+    }
+
     public Mono<ServerResponse> getReviews(ServerRequest request) {
 
         var movieInfoId = request.queryParam("movieInfoId");
+        var movieInfoIds = request.queryParam("movieInfoIds");
+
+        List<Long> movieInfoIdFilter = null;
+        if (movieInfoIds.isPresent()) {
+            movieInfoIdFilter = parseMovieInfoIds("movieInfoIds", movieInfoIds.get());
+        } else if (movieInfoId.isPresent()) {
+            movieInfoIdFilter = parseMovieInfoIds("movieInfoId", movieInfoId.get());
+        }
+        return findReviews(request, movieInfoIdFilter);
+    }
+
+    /**
+     * The POST form of {@code GET /v1/reviews?movieInfoIds=}, taking a JSON array of movie ids for
+     * lists too long for a URL. The other query parameters work as they do on the GET.
+     */
+    public Mono<ServerResponse> lookupReviews(ServerRequest request) {
 
-        if (movieInfoId.isPresent()) {
-            return buildReviewsResponse(reviewReactiveRepository.findReviewByMovieInfoId(Long.valueOf(movieInfoId.get())));
-        } else {
-            return buildReviewsResponse(reviewReactiveRepository.findAll());
+        return request.bodyToMono(Long[].class)
+                .onErrorMap(CodecException.class, e -> new ReviewDataException("body must be a JSON array of movieInfoIds"))
+                .switchIfEmpty(Mono.error(() -> new ReviewDataException("body must be a JSON array of movieInfoIds")))
+                .flatMap(movieInfoIds -> findReviews(request, checkMovieInfoIds(Arrays.stream(movieInfoIds)
+                        .filter(Objects::nonNull)
+                        .distinct()
+                        .collect(Collectors.toList()))));
+    }
+
+    /**
+     * A page of the reviews of the given movies, or of all reviews without {@code movieInfoIdFilter}.
+     * With {@code group=movie} the page is written as a JSON object of review lists keyed by movie
+     * id, holding every requested movie, in the order asked for; a movie can still span pages.
+     * <p>
+     * A GET for given movies carries a strong ETag made of the version of their review sets, so a
+     * matching {@code If-None-Match} is answered with 304 without reading any review. The JSON and
+     * NDJSON representations get different ETags and {@code Vary: Accept}.
+     */
+    private Mono<ServerResponse> findReviews(ServerRequest request, List<Long> movieInfoIdFilter) {
+
+        if (movieInfoIdFilter == null || request.method() != HttpMethod.GET) {
+            return readReviews(request, movieInfoIdFilter, null);
+        }
+        return reviewStatsService.getReviewSetVersion(movieInfoIdFilter)
+                .flatMap(version -> request.checkNotModified(eTag(request, version))
+                        .flatMap(notModified -> ServerResponse.from(notModified)
+                                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT)
+                                .build())
+                        .switchIfEmpty(Mono.defer(() -> readReviews(request, movieInfoIdFilter, version))));
+    }
+
+    private String eTag(ServerRequest request, String version) {
+
+        // NDJSON is another representation of the same URL
+        var variant = request.headers().accept().contains(MediaType.APPLICATION_NDJSON) ? "-ndjson" : "";
+        return "\"" + version + variant + "\"";
+    }
+
+    /**
+     * With a {@code version}, read before the reviews, the response carries it as its ETag.
+     */
+    private Mono<ServerResponse> readReviews(ServerRequest request, List<Long> movieInfoIdFilter, String version) {
+
+        var sort = parseSort(request.queryParam("sort").orElse(null));
+        var cursor = request.queryParam("cursor").map(token -> parseCursor(token, sort)).orElse(null);
+        var limit = parseLimit(request.queryParam("limit").orElse(null));
+        var fields = request.queryParam("fields").map(this::parseFields).orElse(null);
+        var grouped = request.queryParam("group").map(this::parseGroup).orElse(false);
+
+        if (version != null && isCacheable(request, movieInfoIdFilter)) {
+            var id = movieInfoIdFilter.get(0);
+            var load = reviewReactiveRepository.findReviewPage(movieInfoIdFilter, sort, null, limit + 1, null)
+                    .collectList()
+                    .map(reviews -> reviewResponseCache.encode(id, version, reviews, limit, reviews.size() <= limit
+                            ? null
+                            : ReviewCursor.after(sort, reviews.get(limit - 1)).encode()));
+            // the ETag is the version the page was read at, which the cache only serves while current
+            return reviewResponseCache.get(id, version, load)
+                    .flatMap(page -> ServerResponse.ok()
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .headers(headers -> {
+                                if (page.getNextCursor() != null) {
+                                    headers.set(NEXT_CURSOR_HEADER, page.getNextCursor());
+                                }
+                                headers.setETag(eTag(request, page.getVersion()));
+                                headers.set(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+                            })
+                            .bodyValue(page.getBody()));
+        }
+
+        Collection<String> projection = null;
+        if (fields != null) {
+            // grouping needs the movie of each review, even when it is not written out
+            projection = new LinkedHashSet<>(fields.getNames());
+            if (grouped) {
+                projection.add("movieInfoId");
+            }
+        }
+        // one extra review tells whether there is a next page
+        return reviewReactiveRepository.findReviewPage(movieInfoIdFilter, sort, cursor, limit + 1, projection)
+                .collectList()
+                .flatMap(reviews -> {
+                    var page = reviews.size() <= limit ? reviews : reviews.subList(0, limit);
+                    var response = ServerResponse.ok();
+                    if (version != null) {
+                        response.eTag(eTag(request, version))
+                                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+                    }
+                    if (reviews.size() > limit) {
+                        response.header(NEXT_CURSOR_HEADER, ReviewCursor.after(sort, page.get(limit - 1)).encode());
+                    }
+                    if (grouped) {
+                        return response.contentType(MediaType.APPLICATION_JSON)
+                                .bodyValue(groupByMovie(movieInfoIdFilter, page, fields));
+                    }
+                    if (fields == null) {
+                        return response.body(Flux.fromIterable(page), Review.class);
+                    }
+                    return response.body(Flux.fromIterable(page).map(fields::trim), Map.class);
+                });
+    }
+
+    /**
+     * Only the plain first page of a single movie is cached, read as a JSON array.
+     */
+    private boolean isCacheable(ServerRequest request, List<Long> movieInfoIdFilter) {
+
+        return reviewResponseCache.isEnabled()
+                && movieInfoIdFilter != null
+                && movieInfoIdFilter.size() == 1
+                && request.queryParams().size() == 1
+                && request.queryParam("movieInfoId").isPresent()
+                && !request.headers().accept().contains(MediaType.APPLICATION_NDJSON);
+    }
+
+    private Map<Long, List<Object>> groupByMovie(List<Long> movieInfoIds, List<Review> reviews, ReviewFields fields) {
+
+        var byMovie = new LinkedHashMap<Long, List<Object>>();
+        if (movieInfoIds != null) {
+            movieInfoIds.forEach(movieInfoId -> byMovie.put(movieInfoId, new ArrayList<>()));
+        }
+        reviews.forEach(review -> byMovie.computeIfAbsent(review.getMovieInfoId(), movieInfoId -> new ArrayList<>())
+                .add(fields == null ? review : fields.trim(review)));
+        return byMovie;
+    }
+
+    private boolean parseGroup(String group) {
+
+        if (!group.equals("movie")) {
+            throw new ReviewDataException("group must be movie: " + group);
         }
+        return true;
+    }
 
+    private ReviewFields parseFields(String fields) {
+
+        try {
+            return ReviewFields.parse(fields);
+        } catch (IllegalArgumentException e) {
+            throw new ReviewDataException(e.getMessage());
+        }
+    }
+
+    private ReviewSort parseSort(String sort) {
+
+        if (sort == null) {
+            return ReviewSort.ID;
+        }
+        try {
+            return ReviewSort.from(sort);
+        } catch (IllegalArgumentException e) {
+            throw new ReviewDataException("sort must be one of newest, rating: " + sort);
+        }
+    }
+
+    private ReviewCursor parseCursor(String token, ReviewSort sort) {
+
+        try {
+            var cursor = ReviewCursor.decode(token);
+            if (cursor.getSort() != sort) {
+                throw new ReviewDataException("cursor does not belong to sort " + sort.name().toLowerCase());
+            }
+            return cursor;
+        } catch (IllegalArgumentException e) {
+            throw new ReviewDataException(e.getMessage());
+        }
+    }
+
+    private int parseLimit(String limit) {
+
+        if (limit == null) {
+            return defaultLimit;
+        }
+        try {
+            var value = Integer.parseInt(limit.trim());
+            if (value < 1) {
+                throw new ReviewDataException("limit must be positive: " + limit);
+            }
+            return Math.min(value, maxLimit);
+        } catch (NumberFormatException e) {
+            throw new ReviewDataException("limit must be a number: " + limit);
+        }
+    }
+
+    private List<Long> parseMovieInfoIds(String name, String movieInfoIds) {
+
+        try {
+            return checkMovieInfoIds(Arrays.stream(movieInfoIds.split(","))
+                    .map(String::trim)
+                    .filter(id -> !id.isEmpty())
+                    .map(Long::valueOf)
+                    .distinct()
+                    .collect(Collectors.toList()));
+        } catch (NumberFormatException e) {
+            throw new ReviewDataException(name + " must be a comma separated list of numbers: " + movieInfoIds);
+        }
+    }
+
+    private List<Long> checkMovieInfoIds(List<Long> movieInfoIds) {
+
+        // all the ids go into a single $in query
+        if (movieInfoIds.isEmpty() || movieInfoIds.size() > lookupMaxIds) {
+            throw new ReviewDataException("Between 1 and " + lookupMaxIds + " movieInfoIds must be passed, got "
+                    + movieInfoIds.size());
+        }
+        return movieInfoIds;
+    }
+
+    public Mono<ServerResponse> getReviewsStream(ServerRequest request) {
+
+        var movieInfoId = request.queryParam("movieInfoId")
+                .orElseThrow(() -> new ReviewDataException("movieInfoId is required"));
+        Flux<Review> reviews;
+        try {
+            reviews = reviewBroadcaster.subscribe(Long.valueOf(movieInfoId));
+        } catch (NumberFormatException e) {
+            throw new ReviewDataException("movieInfoId must be a number: " + movieInfoId);
+        }
+        var contentType = request.headers().accept().contains(MediaType.APPLICATION_NDJSON)
+                ? MediaType.APPLICATION_NDJSON
+                : MediaType.TEXT_EVENT_STREAM;
+
+        return ServerResponse.ok()
+                .contentType(contentType)
+                .body(reviews, Review.class);
+    }
+
+    public Mono<ServerResponse> getReviewStats(ServerRequest request) {
+
+        var movieInfoId = request.queryParam("movieInfoId")
+                .orElseThrow(() -> new ReviewDataException("movieInfoId is required"));
+        try {
+            return reviewStatsService.getStats(Long.valueOf(movieInfoId))
+                    .flatMap(ServerResponse.ok()::bodyValue);
+        } catch (NumberFormatException e) {
+            throw new ReviewDataException("movieInfoId must be a number: " + movieInfoId);
+        }
     }
 
     public Mono<ServerResponse> buildReviewsResponse(Flux<Review> reviewFlux) {
@@ -77,26 +449,90 @@ public class ReviewHandler {
     public Mono<ServerResponse> updateReview(ServerRequest serverRequest) {
 
         var reviewId = serverRequest.pathVariable("id");
-        var review = reviewReactiveRepository.findById(reviewId)
-                .switchIfEmpty(Mono.error(new ReviewNotFoundException("Review not found for the given review id: " + reviewId)));//Better approach
-
-        return review.flatMap(oldReview -> serverRequest.bodyToMono(Review.class)
-                        .map(newReview -> {
-                            oldReview.setMovieInfoId(newReview.getMovieInfoId());
-                            oldReview.setRating(newReview.getRating());
-                            oldReview.setComment(newReview.getComment());
-                            return oldReview;
-                        })
-                        .flatMap(reviewReactiveRepository::save)
-                        .flatMap(ServerResponse.ok()::bodyValue)
-                //.switchIfEmpty(ServerResponse.notFound().build()) //Alternate approach
-        );
+
+        return serverRequest.bodyToMono(Review.class)
+                .doOnNext(this::validate)
+                .flatMap(newReview -> modifyReview(reviewId, newReview, false))
+                .flatMap(ServerResponse.ok()::bodyValue);
+    }
+
+    /**
+     * Changes only the fields present in the body. A {@code version} in the body makes it
+     * conditional: if the review has moved on since that version the answer is 409.
+     */
+    public Mono<ServerResponse> patchReview(ServerRequest serverRequest) {
+
+        var reviewId = serverRequest.pathVariable("id");
+
+        return serverRequest.bodyToMono(Review.class)
+                .doOnNext(this::validateChanges)
+                .flatMap(changes -> modifyReview(reviewId, changes, true))
+                .flatMap(ServerResponse.ok()::bodyValue);
+    }
+
+    /**
+     * Every constraint of a review is on a single field, so a patch only validates the fields
+     * it sends, against the same annotations as a POST.
+     */
+    private void validateChanges(Review changes) {
+
+        var constraintViolations = new HashSet<ConstraintViolation<Review>>();
+        validateField("movieInfoId", changes.getMovieInfoId(), constraintViolations);
+        validateField("comment", changes.getComment(), constraintViolations);
+        validateField("rating", changes.getRating(), constraintViolations);
+        var errorMessage = validationError(constraintViolations);
+        if (errorMessage != null) {
+            throw new ReviewDataException(errorMessage);
+        }
+    }
+
+    private void validateField(String field, Object value, Set<ConstraintViolation<Review>> constraintViolations) {
+
+        if (value != null) {
+            constraintViolations.addAll(validator.validateValue(Review.class, field, value));
+        }
+    }
+
+    /**
+     * Writes the changes with a single findAndModify that also bumps the version, instead of
+     * reading the review and saving it back.
+     */
+    private Mono<Review> modifyReview(String reviewId, Review changes, boolean partial) {
+
+        var update = new Update().inc("version", 1L);
+        if (!partial || changes.getMovieInfoId() != null) {
+            update.set("movieInfoId", changes.getMovieInfoId());
+        }
+        if (!partial || changes.getComment() != null) {
+            update.set("comment", changes.getComment());
+        }
+        if (!partial || changes.getRating() != null) {
+            update.set("rating", changes.getRating());
+        }
+
+        return reviewReactiveRepository.findAndModify(reviewId, changes.getVersion(), update)
+                .switchIfEmpty(Mono.defer(() -> reviewReactiveRepository.existsById(reviewId)
+                        .flatMap(exists -> Mono.error(exists
+                                ? new ReviewConflictException("Review " + reviewId + " is no longer at version " + changes.getVersion())
+                                : new ReviewNotFoundException("Review not found for the given review id: " + reviewId)))))
+                .flatMap(before -> {
+                    var after = new Review(reviewId,
+                            partial && changes.getMovieInfoId() == null ? before.getMovieInfoId() : changes.getMovieInfoId(),
+                            partial && changes.getComment() == null ? before.getComment() : changes.getComment(),
+                            partial && changes.getRating() == null ? before.getRating() : changes.getRating(),
+                            before.getVersion() == null ? 1L : before.getVersion() + 1);
+                    return reviewStatsService.recordUpdated(before, after).thenReturn(after);
+                })
+                .doOnNext(after -> reviewEvents.local(ReviewChange.updated(after)));
     }
 
     public Mono<ServerResponse> deleteReview(ServerRequest serverRequest) {
 
         var reviewId = serverRequest.pathVariable("id");
-        return reviewReactiveRepository.deleteById(reviewId)
+        return reviewReactiveRepository.findById(reviewId)
+                .flatMap(review -> reviewReactiveRepository.deleteById(reviewId)
+                        .then(reviewStatsService.recordRemoved(review))
+                        .doOnSuccess(v -> reviewEvents.local(ReviewChange.deleted(reviewId))))
                 .then(ServerResponse.noContent().build());
     }
 }
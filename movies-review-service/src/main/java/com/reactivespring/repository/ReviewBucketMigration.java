@@ -0,0 +1,98 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.Review;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.Date;
+
+/**
+ * Fills the bucket collection from the review collection, movie by movie in review id order.
+ * {@link #migrate()} rebuilds the buckets from scratch and leaves the review collection as it
+ * is. Writes made while it runs are not carried over: stop the writers, migrate,
+ * then start the service with {@code reviews.storage.layout=BUCKETED}.
+ * <p>
+ * A finished migration leaves a marker in the {@code migrations} collection. With
+ * {@code reviews.storage.migrateOnStartup} the service migrates only when there is no marker, so
+ * leaving the flag on does not throw away the reviews written into the buckets since. The
+ * startup migration runs after the server is listening but before the service reports itself
+ * ready, so traffic has to be routed by the readiness probe, {@code /actuator/health/readiness}.
+ */
+@Component
+@Slf4j
+public class ReviewBucketMigration implements ApplicationRunner {
+
+    public static final String MARKER_COLLECTION = "migrations";
+    private static final String MARKER_ID = "reviewBuckets";
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final ReviewBucketStore reviewBucketStore;
+    private final boolean migrateOnStartup;
+
+    public ReviewBucketMigration(ReactiveMongoTemplate reactiveMongoTemplate, ReviewBucketStore reviewBucketStore,
+                                 @Value("${reviews.storage.migrateOnStartup:false}") boolean migrateOnStartup) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.reviewBucketStore = reviewBucketStore;
+        this.migrateOnStartup = migrateOnStartup;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+
+        if (migrateOnStartup) {
+            migrateOnce().blockOptional().ifPresentOrElse(
+                    migrated -> log.info("Migrated {} reviews into buckets of {}", migrated, reviewBucketStore.getBucketSize()),
+                    () -> log.info("Reviews were migrated into buckets before, not migrating again"));
+        }
+    }
+
+    /**
+     * Migrates unless a migration finished before; emits the number of reviews written into
+     * buckets, nothing when it did not migrate.
+     */
+    public Mono<Long> migrateOnce() {
+
+        return reactiveMongoTemplate.exists(marker(), MARKER_COLLECTION)
+                .flatMap(migrated -> migrated ? Mono.empty() : migrate());
+    }
+
+    /**
+     * Emits the number of reviews written into buckets.
+     */
+    public Mono<Long> migrate() {
+
+        var reviews = new Query().with(Sort.by("movieInfoId", "_id"));
+        return reviewBucketStore.deleteAll()
+                .then(reviewBucketStore.ensureIndexes())
+                .thenMany(reactiveMongoTemplate.find(reviews, Review.class))
+                .filter(review -> {
+                    if (review.getMovieInfoId() == null) {
+                        log.warn("Skipping review {} without a movieInfoId", review.getReviewId());
+                        return false;
+                    }
+                    return true;
+                })
+                .windowUntilChanged(Review::getMovieInfoId)
+                .concatMap(movie -> movie.buffer(reviewBucketStore.getBucketSize()))
+                .concatMap(bucket -> reviewBucketStore.writeBuckets(bucket.get(0).getMovieInfoId(), bucket)
+                        .thenReturn((long) bucket.size()))
+                .reduce(0L, Long::sum)
+                .flatMap(migrated -> reactiveMongoTemplate.upsert(marker(), new Update()
+                                .set("migrated", migrated)
+                                .set("completedAt", new Date()), MARKER_COLLECTION)
+                        .thenReturn(migrated));
+    }
+
+    private Query marker() {
+        return Query.query(Criteria.where("_id").is(MARKER_ID));
+    }
+}
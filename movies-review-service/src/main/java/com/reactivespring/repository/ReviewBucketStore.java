@@ -0,0 +1,357 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.Review;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * The {@link ReviewLayout#BUCKETED} layout: the reviews of a movie are packed into bucket
+ * documents of the form {@code {movieInfoId, count, reviews: [...]}} holding at most
+ * {@code reviews.storage.bucketSize} reviews, so reading a movie touches one document per bucket
+ * instead of one per review. A new review is pushed into any bucket of its movie with room left,
+ * or starts a new one. Review ids stay unique through a unique index on {@code reviews._id}.
+ */
+@Component
+@Slf4j
+public class ReviewBucketStore {
+
+    public static final String COLLECTION = "reviewBuckets";
+    public static final String MOVES = "reviewBucketMoves";
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final boolean enabled;
+    private final int bucketSize;
+
+    public ReviewBucketStore(ReactiveMongoTemplate reactiveMongoTemplate,
+                             @Value("${reviews.storage.layout:DOCUMENT}") ReviewLayout layout,
+                             @Value("${reviews.storage.bucketSize:200}") int bucketSize) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.enabled = layout == ReviewLayout.BUCKETED;
+        this.bucketSize = bucketSize;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getBucketSize() {
+        return bucketSize;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+
+        if (enabled) {
+            ensureIndexes().block();
+            // a scan of every bucket, so it does not hold up startup
+            repairMoves().subscribe(
+                    repaired -> {
+                        if (repaired > 0) {
+                            log.info("Finished {} review moves that were cut short", repaired);
+                        }
+                    },
+                    e -> log.warn("Could not finish the review moves that were cut short", e));
+        }
+    }
+
+    public Mono<Void> ensureIndexes() {
+
+        var indexOperations = reactiveMongoTemplate.indexOps(COLLECTION);
+        return indexOperations.ensureIndex(new Index().on("movieInfoId", Sort.Direction.ASC)
+                        .on("count", Sort.Direction.ASC)
+                        .named("movieInfoId_count"))
+                .then(indexOperations.ensureIndex(new Index().on("reviews._id", Sort.Direction.ASC)
+                        .named("reviews_id")
+                        .unique()))
+                .then();
+    }
+
+    /**
+     * Reads the reviews matching {@code reviews}, {@code buckets} narrows down the buckets to
+     * unwind and should be implied by {@code reviews}. With {@code fields} only those review
+     * properties are read.
+     */
+    public Flux<Review> find(Criteria buckets, Criteria reviews, Sort sort, Integer limit, Collection<String> fields,
+                             Duration maxTime) {
+
+        var stages = unwound(buckets, reviews);
+        if (sort.isSorted()) {
+            stages.add(Aggregation.sort(sort));
+        }
+        if (limit != null) {
+            stages.add(Aggregation.limit(limit));
+        }
+        if (fields != null) {
+            var projection = new Document();
+            fields.forEach(field -> projection.put(field.equals("reviewId") ? "_id" : field, 1));
+            stages.add(context -> new Document("$project", projection));
+        }
+        var options = AggregationOptions.builder();
+        if (maxTime != null) {
+            options.maxTime(maxTime);
+        }
+        return reactiveMongoTemplate.aggregate(Aggregation.newAggregation(stages).withOptions(options.build()),
+                COLLECTION, Review.class);
+    }
+
+    public Flux<Document> aggregate(Criteria criteria, List<AggregationOperation> stages) {
+
+        var pipeline = unwound(criteria, criteria);
+        pipeline.addAll(stages);
+        return reactiveMongoTemplate.aggregate(Aggregation.newAggregation(pipeline), COLLECTION, Document.class);
+    }
+
+    public Mono<Review> insert(Review review) {
+
+        if (review.getReviewId() == null) {
+            review.setReviewId(new ObjectId().toHexString());
+        }
+        review.setVersion(0L);
+        return push(toDocument(review)).thenReturn(review);
+    }
+
+    /**
+     * Inserts the reviews one by one and emits the error of every review that was not inserted,
+     * keyed by its position in {@code reviews}.
+     */
+    public Mono<Map<Integer, String>> insertAll(List<Review> reviews) {
+
+        return Flux.range(0, reviews.size())
+                .concatMap(index -> insert(reviews.get(index))
+                        .then(Mono.<Map.Entry<Integer, String>>empty())
+                        .onErrorResume(DataAccessException.class, e -> Mono.just(Map.entry(index, e.getMessage()))))
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue);
+    }
+
+    /**
+     * Applies {@code update}, written against a review, to the review inside its bucket and
+     * emits the review as it was before. A review moved to another movie is then moved into a
+     * bucket of the new movie, see {@link #move(Document)}; in between, reads do not see it.
+     */
+    public Mono<Review> findAndModify(String reviewId, Long expectedVersion, Update update) {
+
+        var id = storedId(reviewId);
+        var element = Criteria.where("_id").is(id);
+        if (expectedVersion != null) {
+            element.and("version").is(expectedVersion);
+        }
+        // the query holds the version check, the id alone picks the review inside the bucket
+        var inBucket = new Document();
+        update.getUpdateObject().forEach((operator, fields) -> inBucket.put(operator,
+                ((Document) fields).entrySet().stream()
+                        .collect(Collectors.toMap(field -> "reviews.$[review]." + field.getKey(), Map.Entry::getValue,
+                                (first, second) -> second, Document::new))));
+
+        return reactiveMongoTemplate.findAndModify(Query.query(Criteria.where("reviews").elemMatch(element)),
+                        Update.fromDocument(inBucket).filterArray(Criteria.where("review._id").is(id)), FindAndModifyOptions.options().returnNew(false),
+                        Document.class, COLLECTION)
+                .flatMap(bucket -> {
+                    var before = elementOf(bucket, id);
+                    var after = applied(before, update.getUpdateObject());
+                    var review = toReview(before);
+                    if (Objects.equals(before.get("movieInfoId"), after.get("movieInfoId"))) {
+                        return Mono.just(review);
+                    }
+                    return move(after).thenReturn(review);
+                });
+    }
+
+    /**
+     * Finishes the moves that were cut short, emitting how many: the ones still recorded in
+     * {@link #MOVES} and the reviews left in a bucket of another movie before they got there.
+     */
+    public Mono<Long> repairMoves() {
+
+        var recorded = reactiveMongoTemplate.find(new Query(), Document.class, MOVES)
+                .map(move -> move.get("review", Document.class));
+        var misplaced = reactiveMongoTemplate.aggregate(Aggregation.newAggregation(
+                Aggregation.unwind("reviews"),
+                context -> new Document("$project", new Document("review", "$reviews")
+                        .append("misplaced", new Document("$ne", List.of("$reviews.movieInfoId", "$movieInfoId")))),
+                Aggregation.match(Criteria.where("misplaced").is(true)),
+                context -> new Document("$replaceRoot", new Document("newRoot", "$review"))), COLLECTION, Document.class);
+        return recorded.concatWith(misplaced)
+                .concatMap(review -> move(review).thenReturn(review))
+                .count();
+    }
+
+    /**
+     * Moves a review, already updated to its new movie inside its old bucket, into a bucket of
+     * the new movie. The unique index keeps it from being in both at once, so it is recorded in
+     * {@link #MOVES} before it is pulled and dropped from there once it is pushed; a move cut
+     * short anywhere is finished by {@link #repairMoves()}. Every step can run again.
+     */
+    private Mono<Void> move(Document review) {
+
+        var id = review.get("_id");
+        var byId = Query.query(Criteria.where("_id").is(id));
+        var elsewhere = Query.query(Criteria.where("reviews._id").is(id).and("movieInfoId").ne(review.get("movieInfoId")));
+        return reactiveMongoTemplate.upsert(byId, new Update().set("review", review), MOVES)
+                .then(reactiveMongoTemplate.findOne(elsewhere, Document.class, COLLECTION)
+                        .flatMap(bucket -> pull(bucket.get("_id"), id)))
+                .then(reactiveMongoTemplate.exists(Query.query(Criteria.where("reviews._id").is(id)), COLLECTION))
+                .flatMap(present -> present ? Mono.<Void>empty() : push(review))
+                .then(reactiveMongoTemplate.remove(byId, MOVES))
+                .then();
+    }
+
+    public Mono<Boolean> existsById(String reviewId) {
+
+        return reactiveMongoTemplate.exists(Query.query(Criteria.where("reviews._id").is(storedId(reviewId))), COLLECTION);
+    }
+
+    public Mono<Void> deleteById(String reviewId) {
+
+        var id = storedId(reviewId);
+        return reactiveMongoTemplate.findOne(Query.query(Criteria.where("reviews._id").is(id)), Document.class, COLLECTION)
+                .flatMap(bucket -> pull(bucket.get("_id"), id));
+    }
+
+    public Mono<Void> deleteAll() {
+
+        return reactiveMongoTemplate.remove(new Query(), COLLECTION)
+                .then(reactiveMongoTemplate.remove(new Query(), MOVES))
+                .then();
+    }
+
+    public Mono<Long> count() {
+
+        return reactiveMongoTemplate.aggregate(Aggregation.newAggregation(
+                        Aggregation.group().sum("count").as("count")), COLLECTION, Document.class)
+                .next()
+                .map(result -> ((Number) result.get("count")).longValue())
+                .defaultIfEmpty(0L);
+    }
+
+    /**
+     * Writes the given reviews of one movie as new full buckets, in the order given.
+     */
+    public Mono<Long> writeBuckets(Long movieInfoId, List<Review> reviews) {
+
+        var buckets = IntStream.range(0, (reviews.size() + bucketSize - 1) / bucketSize)
+                .mapToObj(bucket -> reviews.subList(bucket * bucketSize, Math.min(reviews.size(), (bucket + 1) * bucketSize)))
+                .map(slice -> new Document("movieInfoId", movieInfoId)
+                        .append("count", slice.size())
+                        .append("reviews", slice.stream().map(this::toDocument).collect(Collectors.toList())))
+                .collect(Collectors.toList());
+        return reactiveMongoTemplate.insert(buckets, COLLECTION)
+                .count();
+    }
+
+    private List<AggregationOperation> unwound(Criteria buckets, Criteria reviews) {
+
+        var stages = new ArrayList<AggregationOperation>();
+        stages.add(Aggregation.match(buckets));
+        stages.add(Aggregation.unwind("reviews"));
+        stages.add(context -> new Document("$replaceRoot", new Document("newRoot", "$reviews")));
+        stages.add(Aggregation.match(reviews));
+        return stages;
+    }
+
+    /**
+     * Pushes the review into a bucket of its movie with room left, or starts a new bucket. A
+     * bucket already holding the id is skipped, so a duplicate always lands in another bucket
+     * and is refused by the unique index.
+     */
+    private Mono<Void> push(Document review) {
+
+        var query = Query.query(Criteria.where("movieInfoId").is(review.get("movieInfoId"))
+                .and("count").lt(bucketSize)
+                .and("reviews._id").ne(review.get("_id")));
+        return reactiveMongoTemplate.upsert(query, new Update().push("reviews", review).inc("count", 1), COLLECTION)
+                .then();
+    }
+
+    /**
+     * Takes the review out of its bucket. The last review takes its bucket along, so no bucket
+     * is ever left empty; if the bucket changed in between, the review is looked up again.
+     */
+    private Mono<Void> pull(Object bucketId, Object reviewId) {
+
+        var inBucket = Criteria.where("_id").is(bucketId).and("reviews._id").is(reviewId);
+        return reactiveMongoTemplate.remove(Query.query(Criteria.where("_id").is(bucketId)
+                        .and("reviews._id").is(reviewId)
+                        .and("count").is(1)), COLLECTION)
+                .flatMap(removed -> removed.getDeletedCount() > 0
+                        ? Mono.just(true)
+                        : reactiveMongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(bucketId)
+                                                .and("reviews._id").is(reviewId)
+                                                .and("count").gt(1)),
+                                        new Update().pull("reviews", new Document("_id", reviewId)).inc("count", -1), COLLECTION)
+                                .map(updated -> updated.getModifiedCount() > 0))
+                .flatMap(pulled -> pulled
+                        ? Mono.<Void>empty()
+                        : reactiveMongoTemplate.exists(Query.query(inBucket), COLLECTION)
+                                .flatMap(present -> present ? pull(bucketId, reviewId) : Mono.empty()));
+    }
+
+    private Document elementOf(Document bucket, Object reviewId) {
+
+        return bucket.getList("reviews", Document.class).stream()
+                .filter(review -> reviewId.equals(review.get("_id")))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("Review " + reviewId + " is missing from its bucket"));
+    }
+
+    private Document applied(Document review, Document update) {
+
+        var after = new Document(review);
+        var set = update.get("$set", Document.class);
+        if (set != null) {
+            after.putAll(set);
+        }
+        var inc = update.get("$inc", Document.class);
+        if (inc != null) {
+            inc.forEach((field, by) -> after.put(field, ((Number) after.getOrDefault(field, 0L)).longValue()
+                    + ((Number) by).longValue()));
+        }
+        return after;
+    }
+
+    private Document toDocument(Review review) {
+
+        var document = new Document();
+        reactiveMongoTemplate.getConverter().write(review, document);
+        document.remove("_class");
+        document.put("_id", storedId(review.getReviewId()));
+        return document;
+    }
+
+    private Review toReview(Document document) {
+        return reactiveMongoTemplate.getConverter().read(Review.class, document);
+    }
+
+    /**
+     * Review ids are stored as ObjectIds when they look like one, as in the review collection.
+     */
+    static Object storedId(String reviewId) {
+        return ObjectId.isValid(reviewId) ? new ObjectId(reviewId) : reviewId;
+    }
+}
@@ -0,0 +1,63 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.Review;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Position of the last review of a page, handed to clients as an opaque token. It holds the
+ * sort keys of that review, so the next page is a range query on the index instead of a skip.
+ */
+public class ReviewCursor {
+
+    private static final String SEPARATOR = "|";
+
+    private final ReviewSort sort;
+    private final Double rating;
+    private final String reviewId;
+
+    private ReviewCursor(ReviewSort sort, Double rating, String reviewId) {
+        this.sort = sort;
+        this.rating = rating;
+        this.reviewId = reviewId;
+    }
+
+    public static ReviewCursor after(ReviewSort sort, Review review) {
+        return new ReviewCursor(sort, review.getRating(), review.getReviewId());
+    }
+
+    public static ReviewCursor decode(String token) {
+
+        try {
+            var value = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            var parts = value.split("\\" + SEPARATOR, 3);
+            if (parts.length != 3 || parts[2].isEmpty()) {
+                throw new IllegalArgumentException("Invalid cursor: " + token);
+            }
+            var rating = parts[1].isEmpty() ? null : Double.valueOf(parts[1]);
+            return new ReviewCursor(ReviewSort.valueOf(parts[0]), rating, parts[2]);
+        } catch (IllegalArgumentException e) {
+            // also covers bad base64, unknown sorts and bad numbers
+            throw new IllegalArgumentException("Invalid cursor: " + token, e);
+        }
+    }
+
+    public String encode() {
+
+        var value = sort.name() + SEPARATOR + (rating == null ? "" : rating) + SEPARATOR + reviewId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public ReviewSort getSort() {
+        return sort;
+    }
+
+    public Double getRating() {
+        return rating;
+    }
+
+    public String getReviewId() {
+        return reviewId;
+    }
+}
@@ -0,0 +1,43 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.Review;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexResolver;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Creates the indexes declared on {@link Review} on startup, an index that exists already is left
+ * as it is. {@code movieInfoId_id} serves the reads of a movie's reviews and the id ordered pages
+ * of it, {@code movieInfoId_rating_id} the rating ordered ones and {@code rating_id} the rating
+ * ordered pages across all movies. The buckets of the {@link ReviewLayout#BUCKETED} layout have
+ * their own, see {@link ReviewBucketStore}.
+ */
+@Component
+public class ReviewIndexes {
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    public ReviewIndexes(ReactiveMongoTemplate reactiveMongoTemplate) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+
+        ensureIndexes().block();
+    }
+
+    public Mono<Void> ensureIndexes() {
+
+        var indexOperations = reactiveMongoTemplate.indexOps(Review.class);
+        var declared = IndexResolver.create(reactiveMongoTemplate.getConverter().getMappingContext())
+                .resolveIndexFor(Review.class);
+        return Flux.fromIterable(declared)
+                .concatMap(indexOperations::ensureIndex)
+                .then();
+    }
+}
@@ -0,0 +1,17 @@
+package com.reactivespring.repository;
+
+/**
+ * How reviews are stored, picked with {@code reviews.storage.layout}.
+ */
+public enum ReviewLayout {
+
+    /**
+     * One document per review in the review collection.
+     */
+    DOCUMENT,
+
+    /**
+     * Reviews packed into per movie bucket documents, see {@link ReviewBucketStore}.
+     */
+    BUCKETED
+}
@@ -4,7 +4,21 @@ import com.reactivespring.domain.Review;
 import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
 import reactor.core.publisher.*;
 
-public interface ReviewReactiveRepository extends ReactiveMongoRepository<Review, String> {
+import java.util.List;
+
+public interface ReviewReactiveRepository extends ReactiveMongoRepository<Review, String>, ReviewReactiveRepositoryCustom {
+
+    <S extends Review> Mono<S> save(S review);
+
+    <S extends Review> Flux<S> saveAll(Iterable<S> reviews);
+
+    Mono<Boolean> existsById(String id);
+
+    Mono<Void> deleteById(String id);
+
+    Mono<Review> findById(String id);
 
     Flux<Review> findReviewByMovieInfoId(Long id);
+
+    Flux<Review> findReviewByMovieInfoIdIn(List<Long> ids);
 }
@@ -0,0 +1,66 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.Review;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read queries that are bounded by the request deadline, see {@link ReviewReactiveRepositoryCustomImpl}.
+ * The basic writes are declared here as well, so they follow {@code reviews.storage.layout}.
+ */
+public interface ReviewReactiveRepositoryCustom {
+
+    <S extends Review> Mono<S> save(S review);
+
+    <S extends Review> Flux<S> saveAll(Iterable<S> reviews);
+
+    Mono<Boolean> existsById(String id);
+
+    Mono<Void> deleteById(String id);
+
+    Mono<Void> deleteAll();
+
+    Mono<Long> count();
+
+    Mono<Review> findById(String id);
+
+    Flux<Review> findAll();
+
+    Flux<Review> findReviewByMovieInfoId(Long id);
+
+    Flux<Review> findReviewByMovieInfoIdIn(List<Long> ids);
+
+    /**
+     * Reads at most {@code limit} reviews in {@code sort} order, starting right after
+     * {@code after} when given. {@code movieInfoIds} restricts the page to those movies.
+     * With {@code fields} only those review properties, plus the sort keys, are read.
+     */
+    Flux<Review> findReviewPage(List<Long> movieInfoIds, ReviewSort sort, ReviewCursor after, int limit,
+                                Collection<String> fields);
+
+    /**
+     * Inserts the reviews with one unordered {@code insertMany}, so one bad review does not stop
+     * the rest. Reviews without an id get one assigned. Emits the error of every review that was
+     * not inserted, keyed by its position in {@code reviews}.
+     */
+    Mono<Map<Integer, String>> insertUnordered(List<Review> reviews);
+
+    /**
+     * Applies {@code update} in one {@code findAndModify} and emits the review as it was before.
+     * With an {@code expectedVersion} only that version is modified. Empty when no review matched.
+     */
+    Mono<Review> findAndModify(String reviewId, Long expectedVersion, Update update);
+
+    /**
+     * Runs {@code stages} over the reviews matching {@code criteria}, whichever the layout.
+     */
+    Flux<Document> aggregateReviews(Criteria criteria, List<AggregationOperation> stages);
+}
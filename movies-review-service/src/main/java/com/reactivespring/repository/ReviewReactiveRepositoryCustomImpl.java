@@ -0,0 +1,290 @@
+package com.reactivespring.repository;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.model.InsertManyOptions;
+import com.reactivespring.deadline.RequestDeadline;
+import com.reactivespring.domain.Review;
+import com.reactivespring.exception.DeadlineExceededException;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Runs the read queries with the time left until the request deadline as Mongo's
+ * {@code maxTimeMS}, so the server stops working on a query nobody is waiting for.
+ * Also holds the queries and writes Spring Data can not derive, like keyset pages and bulk inserts.
+ * With the {@link ReviewLayout#BUCKETED} layout every method goes to {@link ReviewBucketStore}.
+ */
+public class ReviewReactiveRepositoryCustomImpl implements ReviewReactiveRepositoryCustom {
+
+    private static final int STRING = 2;
+    private static final int OBJECT_ID = 7;
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final ReviewBucketStore reviewBucketStore;
+
+    public ReviewReactiveRepositoryCustomImpl(ReactiveMongoTemplate reactiveMongoTemplate, ReviewBucketStore reviewBucketStore) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.reviewBucketStore = reviewBucketStore;
+    }
+
+    @Override
+    public <S extends Review> Mono<S> save(S review) {
+
+        if (reviewBucketStore.isEnabled()) {
+            if (review.getVersion() == null) {
+                return reviewBucketStore.insert(review).thenReturn(review);
+            }
+            return reviewBucketStore.findAndModify(review.getReviewId(), review.getVersion(), new Update()
+                            .set("movieInfoId", review.getMovieInfoId())
+                            .set("comment", review.getComment())
+                            .set("rating", review.getRating())
+                            .inc("version", 1L))
+                    .switchIfEmpty(Mono.error(() -> new OptimisticLockingFailureException(
+                            "Review " + review.getReviewId() + " is no longer at version " + review.getVersion())))
+                    .map(before -> {
+                        review.setVersion(review.getVersion() + 1);
+                        return review;
+                    });
+        }
+        // like SimpleReactiveMongoRepository, a review without a version is new
+        return review.getVersion() == null ? reactiveMongoTemplate.insert(review) : reactiveMongoTemplate.save(review);
+    }
+
+    @Override
+    public <S extends Review> Flux<S> saveAll(Iterable<S> reviews) {
+        return Flux.fromIterable(reviews).concatMap(this::save);
+    }
+
+    @Override
+    public Mono<Boolean> existsById(String id) {
+
+        if (reviewBucketStore.isEnabled()) {
+            return reviewBucketStore.existsById(id);
+        }
+        return reactiveMongoTemplate.exists(byId(id), Review.class);
+    }
+
+    @Override
+    public Mono<Void> deleteById(String id) {
+
+        if (reviewBucketStore.isEnabled()) {
+            return reviewBucketStore.deleteById(id);
+        }
+        return reactiveMongoTemplate.remove(byId(id), Review.class).then();
+    }
+
+    @Override
+    public Mono<Void> deleteAll() {
+
+        if (reviewBucketStore.isEnabled()) {
+            return reviewBucketStore.deleteAll();
+        }
+        return reactiveMongoTemplate.remove(new Query(), Review.class).then();
+    }
+
+    @Override
+    public Mono<Long> count() {
+
+        if (reviewBucketStore.isEnabled()) {
+            return reviewBucketStore.count();
+        }
+        return reactiveMongoTemplate.count(new Query(), Review.class);
+    }
+
+    @Override
+    public Mono<Review> findById(String id) {
+        return find(Criteria.where("_id").is(ReviewBucketStore.storedId(id)),
+                Criteria.where("reviews._id").is(ReviewBucketStore.storedId(id)), Sort.unsorted(), null, null).next();
+    }
+
+    @Override
+    public Flux<Review> findAll() {
+        return find(new Criteria(), new Criteria(), Sort.unsorted(), null, null);
+    }
+
+    @Override
+    public Flux<Review> findReviewByMovieInfoId(Long id) {
+        return find(Criteria.where("movieInfoId").is(id), Criteria.where("movieInfoId").is(id), Sort.unsorted(), null, null);
+    }
+
+    @Override
+    public Flux<Review> findReviewByMovieInfoIdIn(List<Long> ids) {
+        return find(Criteria.where("movieInfoId").in(ids), Criteria.where("movieInfoId").in(ids), Sort.unsorted(), null, null);
+    }
+
+    @Override
+    public Flux<Review> findReviewPage(List<Long> movieInfoIds, ReviewSort sort, ReviewCursor after, int limit,
+                                       Collection<String> fields) {
+
+        var criteria = new ArrayList<Criteria>();
+        if (movieInfoIds != null) {
+            criteria.add(Criteria.where("movieInfoId").in(movieInfoIds));
+        }
+        if (after != null) {
+            criteria.add(after(sort, after));
+        }
+        var reviews = criteria.isEmpty() ? new Criteria() : new Criteria().andOperator(criteria.toArray(new Criteria[0]));
+        var buckets = movieInfoIds == null ? new Criteria() : Criteria.where("movieInfoId").in(movieInfoIds);
+        return find(reviews, buckets, sort.getSort(), limit, projected(fields, sort));
+    }
+
+    @Override
+    public Mono<Map<Integer, String>> insertUnordered(List<Review> reviews) {
+
+        if (reviewBucketStore.isEnabled()) {
+            return reviewBucketStore.insertAll(reviews);
+        }
+
+        var documents = reviews.stream()
+                .map(review -> {
+                    if (review.getReviewId() == null) {
+                        review.setReviewId(new ObjectId().toHexString());
+                    }
+                    review.setVersion(0L);
+                    var document = new Document();
+                    reactiveMongoTemplate.getConverter().write(review, document);
+                    return document;
+                })
+                .collect(Collectors.toList());
+
+        return reactiveMongoTemplate.getCollection(reactiveMongoTemplate.getCollectionName(Review.class))
+                .flatMap(collection -> Mono.from(collection.insertMany(documents, new InsertManyOptions().ordered(false))))
+                .map(result -> Map.<Integer, String>of())
+                .onErrorResume(MongoBulkWriteException.class, e -> Mono.just(e.getWriteErrors().stream()
+                        .collect(Collectors.toMap(BulkWriteError::getIndex, BulkWriteError::getMessage))));
+    }
+
+    @Override
+    public Mono<Review> findAndModify(String reviewId, Long expectedVersion, Update update) {
+
+        if (reviewBucketStore.isEnabled()) {
+            return reviewBucketStore.findAndModify(reviewId, expectedVersion, update);
+        }
+
+        var criteria = Criteria.where("_id").is(reviewId);
+        if (expectedVersion != null) {
+            criteria.and("version").is(expectedVersion);
+        }
+        return reactiveMongoTemplate.findAndModify(Query.query(criteria), update, Review.class);
+    }
+
+    @Override
+    public Flux<Document> aggregateReviews(Criteria criteria, List<AggregationOperation> stages) {
+
+        if (reviewBucketStore.isEnabled()) {
+            return reviewBucketStore.aggregate(criteria, stages);
+        }
+        var pipeline = new ArrayList<AggregationOperation>();
+        pipeline.add(Aggregation.match(criteria));
+        pipeline.addAll(stages);
+        return reactiveMongoTemplate.aggregate(Aggregation.newAggregation(pipeline), Review.class, Document.class);
+    }
+
+    private Criteria after(ReviewSort sort, ReviewCursor cursor) {
+
+        switch (sort) {
+            case ID:
+                return idAfter(cursor.getReviewId(), true);
+            case NEWEST:
+                return idAfter(cursor.getReviewId(), false);
+            default:
+                // ratings descend towards the reviews without one, which sort last
+                if (cursor.getRating() == null) {
+                    return new Criteria().andOperator(Criteria.where("rating").is(null),
+                            idAfter(cursor.getReviewId(), false));
+                }
+                return new Criteria().orOperator(
+                        Criteria.where("rating").lt(cursor.getRating()),
+                        new Criteria().andOperator(Criteria.where("rating").is(cursor.getRating()),
+                                idAfter(cursor.getReviewId(), false)),
+                        Criteria.where("rating").is(null));
+        }
+    }
+
+    /**
+     * Ids are stored as ObjectIds when they look like one and as strings otherwise, and Mongo
+     * sorts every string before every ObjectId. A range on one type never matches the other, so
+     * moving from the strings into the ObjectIds has to be spelled out.
+     */
+    private Criteria idAfter(String reviewId, boolean ascending) {
+
+        if (ObjectId.isValid(reviewId)) {
+            var objectId = new ObjectId(reviewId);
+            return ascending
+                    ? Criteria.where("_id").gt(objectId)
+                    : new Criteria().orOperator(Criteria.where("_id").lt(objectId), Criteria.where("_id").type(STRING));
+        }
+        return ascending
+                ? new Criteria().orOperator(Criteria.where("_id").gt(reviewId), Criteria.where("_id").type(OBJECT_ID))
+                : Criteria.where("_id").lt(reviewId);
+    }
+
+    private Query byId(String id) {
+        return Query.query(Criteria.where("_id").is(id));
+    }
+
+    /**
+     * The page needs the sort keys of its last review for the next cursor.
+     */
+    private Collection<String> projected(Collection<String> fields, ReviewSort sort) {
+
+        if (fields == null) {
+            return null;
+        }
+        var projected = new LinkedHashSet<>(fields);
+        sort.getSort().forEach(order -> projected.add(order.getProperty().equals("_id") ? "reviewId" : order.getProperty()));
+        return projected;
+    }
+
+    /**
+     * {@code buckets} only narrows down the buckets to read with the bucketed layout. Without
+     * {@code fields} whole reviews are read.
+     */
+    private Flux<Review> find(Criteria reviews, Criteria buckets, Sort sort, Integer limit, Collection<String> fields) {
+
+        return Flux.deferContextual(context -> {
+            var deadline = RequestDeadline.from(context);
+            Duration maxTime = null;
+            if (deadline.isPresent()) {
+                if (deadline.get().isExpired()) {
+                    return Flux.error(new DeadlineExceededException("Request deadline passed before querying reviews"));
+                }
+                // maxTimeMS of 0 means no limit, so never go below a millisecond
+                maxTime = Duration.ofMillis(Math.max(1, deadline.get().remaining().toMillis()));
+            }
+            if (reviewBucketStore.isEnabled()) {
+                return reviewBucketStore.find(buckets, reviews, sort, limit, fields, maxTime);
+            }
+            var query = new Query(reviews).with(sort);
+            if (limit != null) {
+                query.limit(limit);
+            }
+            if (fields != null) {
+                fields.forEach(field -> query.fields().include(field));
+            }
+            if (maxTime != null) {
+                query.maxTime(maxTime);
+            }
+            return reactiveMongoTemplate.find(query, Review.class);
+        });
+    }
+}
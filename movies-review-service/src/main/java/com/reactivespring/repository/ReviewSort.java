@@ -0,0 +1,28 @@
+package com.reactivespring.repository;
+
+import org.springframework.data.domain.Sort;
+
+/**
+ * Orders a page of reviews can be read in. Every order ends with {@code _id} so that a review
+ * is identified by its position and the next page can continue right after it.
+ */
+public enum ReviewSort {
+
+    ID(Sort.by(Sort.Direction.ASC, "_id")),
+    NEWEST(Sort.by(Sort.Direction.DESC, "_id")),
+    RATING(Sort.by(Sort.Direction.DESC, "rating").and(Sort.by(Sort.Direction.DESC, "_id")));
+
+    private final Sort sort;
+
+    ReviewSort(Sort sort) {
+        this.sort = sort;
+    }
+
+    public Sort getSort() {
+        return sort;
+    }
+
+    public static ReviewSort from(String name) {
+        return valueOf(name.trim().toUpperCase());
+    }
+}
@@ -17,9 +17,14 @@ public class ReviewRouter {
 
         return route()
                 .nest(path("/v1/reviews"), builder -> {
-                    builder.POST(reviewHandler::addReview)
+                    builder.GET("/stats", reviewHandler::getReviewStats)
+                            .GET("/stream", reviewHandler::getReviewsStream)
+                            .POST("/bulk", reviewHandler::addReviews)
+                            .POST("/lookup", reviewHandler::lookupReviews)
+                            .POST(reviewHandler::addReview)
                             .GET(reviewHandler::getReviews)
                             .PUT("/{id}", reviewHandler::updateReview)
+                            .PATCH("/{id}", reviewHandler::patchReview)
                             .DELETE("/{id}", reviewHandler::deleteReview);
                 })
                 .GET("/v1/helloworld", (request -> ServerResponse.ok().bodyValue("helloworld")))
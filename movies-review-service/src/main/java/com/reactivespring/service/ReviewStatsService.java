@@ -0,0 +1,268 @@
+package com.reactivespring.service;
+
+import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewStats;
+import com.reactivespring.repository.ReviewReactiveRepository;
+import com.reactivespring.repository.ReviewStatsRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.ArithmeticOperators;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps one {@link ReviewStats} document per movie up to date with atomic {@code $inc},
+ * {@code $min} and {@code $max} updates, so reading the stats never touches the reviews.
+ * A removed rating can not be taken back out of {@code min}/{@code max}; when it was one of
+ * them the movie is recomputed from its reviews instead. {@link #rebuildAll()} does the same for
+ * every movie to repair drift.
+ * <p>
+ * Every write to the reviews of a movie bumps the {@code version} of its stats, which makes it
+ * the version of the movie's review set, see {@link #getReviewSetVersion(List)}.
+ */
+@Service
+@Slf4j
+public class ReviewStatsService {
+
+    private static final String EPOCH = "epoch";
+    // when the stats were last written, as an ObjectId, so a full rebuild can tell what it did not write
+    private static final String GENERATION = "generation";
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final ReviewStatsRepository reviewStatsRepository;
+    private final ReviewReactiveRepository reviewReactiveRepository;
+
+    public ReviewStatsService(ReactiveMongoTemplate reactiveMongoTemplate, ReviewStatsRepository reviewStatsRepository,
+                              ReviewReactiveRepository reviewReactiveRepository) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.reviewStatsRepository = reviewStatsRepository;
+        this.reviewReactiveRepository = reviewReactiveRepository;
+    }
+
+    public Mono<ReviewStats> getStats(Long movieInfoId) {
+
+        return reviewStatsRepository.findById(movieInfoId)
+                .defaultIfEmpty(ReviewStats.empty(movieInfoId));
+    }
+
+    /**
+     * A token that changes whenever a review of any of the movies is written, for use as an
+     * ETag. Stats removed and created again restart their version, so the token also holds
+     * the {@code epoch} each stats document got when it was created; a movie without stats has
+     * no reviews and stands as {@code 0}. More than one movie is hashed into a fixed length.
+     */
+    public Mono<String> getReviewSetVersion(List<Long> movieInfoIds) {
+
+        var query = Query.query(Criteria.where("_id").in(movieInfoIds));
+        query.fields().include(EPOCH).include("version");
+
+        return reactiveMongoTemplate.find(query, Document.class, reactiveMongoTemplate.getCollectionName(ReviewStats.class))
+                .collectMap(stats -> ((Number) stats.get("_id")).longValue(),
+                        stats -> stats.getString(EPOCH) + "." + stats.get("version"))
+                .map(versions -> {
+                    var version = movieInfoIds.stream()
+                            .map(movieInfoId -> versions.getOrDefault(movieInfoId, "0"))
+                            .collect(Collectors.joining(","));
+                    return movieInfoIds.size() == 1 ? version : digest(movieInfoIds + version);
+                });
+    }
+
+    private static String digest(String value) {
+
+        try {
+            var hash = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(hash, 16));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public Mono<Void> recordAdded(Review review) {
+
+        return recordAdded(List.of(review));
+    }
+
+    /**
+     * Adds a batch of new reviews with one update per movie instead of one per review.
+     */
+    public Mono<Void> recordAdded(List<Review> reviews) {
+
+        var reviewsByMovie = reviews.stream()
+                .collect(Collectors.groupingBy(Review::getMovieInfoId, LinkedHashMap::new, Collectors.toList()));
+
+        return Flux.fromIterable(reviewsByMovie.entrySet())
+                .concatMap(movieReviews -> reactiveMongoTemplate.upsert(byMovieInfoId(movieReviews.getKey()),
+                        addedUpdate(movieReviews.getValue()), ReviewStats.class))
+                .then();
+    }
+
+    private Update addedUpdate(List<Review> reviews) {
+
+        var update = new Update().inc("count", (long) reviews.size()).inc("version", 1L)
+                .set(GENERATION, new ObjectId())
+                .setOnInsert(EPOCH, new ObjectId().toHexString());
+        var ratings = reviews.stream()
+                .map(Review::getRating)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+        if (ratings.isEmpty()) {
+            return update;
+        }
+        update.inc("ratingCount", (long) ratings.size())
+                .inc("sum", ratings.stream().mapToDouble(Double::doubleValue).sum())
+                .min("min", Collections.min(ratings))
+                .max("max", Collections.max(ratings));
+        ratings.stream()
+                .collect(Collectors.groupingBy(ReviewStats::bucket, Collectors.counting()))
+                .forEach((bucket, count) -> update.inc("histogram." + bucket, count));
+        return update;
+    }
+
+    public Mono<Void> recordRemoved(Review review) {
+
+        var update = new Update().inc("count", -1L).inc("version", 1L).set(GENERATION, new ObjectId());
+        var rating = review.getRating();
+        if (rating != null) {
+            update.inc("ratingCount", -1L)
+                    .inc("sum", -rating)
+                    .inc("histogram." + ReviewStats.bucket(rating), -1L);
+        }
+        // without stats yet the count goes negative, and the movie is rebuilt below
+        update.setOnInsert(EPOCH, new ObjectId().toHexString());
+        return reactiveMongoTemplate.findAndModify(byMovieInfoId(review.getMovieInfoId()), update,
+                        FindAndModifyOptions.options().returnNew(true).upsert(true), ReviewStats.class)
+                .filter(reviewStats -> reviewStats.getCount() <= 0
+                        || rating != null && (rating.equals(reviewStats.getMin()) || rating.equals(reviewStats.getMax())))
+                .flatMap(reviewStats -> rebuild(review.getMovieInfoId()));
+    }
+
+    public Mono<Void> recordUpdated(Review before, Review after) {
+
+        if (Objects.equals(before.getMovieInfoId(), after.getMovieInfoId())
+                && Objects.equals(before.getRating(), after.getRating())) {
+            // the aggregate is unchanged, but the review set is not; reviews written before
+            // there were stats get them here, or their version would stay 0 for good
+            return reactiveMongoTemplate.upsert(byMovieInfoId(after.getMovieInfoId()),
+                            new Update().inc("version", 1L).set(GENERATION, new ObjectId())
+                                    .setOnInsert(EPOCH, new ObjectId().toHexString()),
+                            ReviewStats.class)
+                    .flatMap(result -> result.getUpsertedId() == null ? Mono.empty() : rebuild(after.getMovieInfoId()))
+                    .then();
+        }
+        return recordRemoved(before).then(recordAdded(after));
+    }
+
+    public Mono<Void> rebuild(Long movieInfoId) {
+
+        return aggregate(Criteria.where("movieInfoId").is(movieInfoId))
+                .next()
+                .flatMap(reviewStats -> replace(reviewStats, new ObjectId()).thenReturn(reviewStats))
+                .switchIfEmpty(reactiveMongoTemplate.remove(byMovieInfoId(movieInfoId), ReviewStats.class)
+                        .then(Mono.empty()))
+                .then();
+    }
+
+    /**
+     * Recomputes the stats of every movie from the reviews collection and drops the stats of
+     * movies that no longer have any review. Every stats write stamps its {@code generation}, so
+     * the stats left over are those last written before the rebuild started.
+     */
+    public Mono<Long> rebuildAll() {
+
+        var generation = new ObjectId();
+        return aggregate(new Criteria())
+                .concatMap(reviewStats -> replace(reviewStats, generation).thenReturn(reviewStats.getMovieInfoId()))
+                .count()
+                .flatMap(rebuilt -> reactiveMongoTemplate.remove(
+                                Query.query(Criteria.where(GENERATION).not().gte(generation)), ReviewStats.class)
+                        .thenReturn(rebuilt));
+    }
+
+    @Scheduled(initialDelayString = "${reviews.stats.rebuildInterval:PT6H}",
+            fixedDelayString = "${reviews.stats.rebuildInterval:PT6H}")
+    public void scheduledRebuild() {
+
+        var rebuilt = rebuildAll().block();
+        log.info("Rebuilt review stats of {} movies", rebuilt);
+    }
+
+    private Flux<ReviewStats> aggregate(Criteria criteria) {
+
+        var stages = List.<AggregationOperation>of(
+                Aggregation.project("movieInfoId", "rating")
+                        .and(ArithmeticOperators.Floor.floorValueOf("rating")).as("bucket"),
+                Aggregation.group("movieInfoId", "bucket")
+                        .count().as("count")
+                        .sum("rating").as("sum")
+                        .min("rating").as("min")
+                        .max("rating").as("max"),
+                Aggregation.sort(Sort.Direction.ASC, "_id.movieInfoId"));
+
+        return reviewReactiveRepository.aggregateReviews(criteria, stages)
+                .bufferUntilChanged(row -> row.get("_id", Document.class).get("movieInfoId"))
+                .map(this::fold);
+    }
+
+    private ReviewStats fold(List<Document> rows) {
+
+        var reviewStats = ReviewStats.empty(((Number) rows.get(0).get("_id", Document.class).get("movieInfoId")).longValue());
+        rows.forEach(row -> {
+            var count = ((Number) row.get("count")).longValue();
+            reviewStats.setCount(reviewStats.getCount() + count);
+            var bucket = (Number) row.get("_id", Document.class).get("bucket");
+            if (bucket == null) {
+                return;
+            }
+            var min = ((Number) row.get("min")).doubleValue();
+            var max = ((Number) row.get("max")).doubleValue();
+            reviewStats.setRatingCount(reviewStats.getRatingCount() + count);
+            reviewStats.setSum(reviewStats.getSum() + ((Number) row.get("sum")).doubleValue());
+            reviewStats.getHistogram().put(String.valueOf(bucket.longValue()), count);
+            reviewStats.setMin(reviewStats.getMin() == null ? min : Math.min(reviewStats.getMin(), min));
+            reviewStats.setMax(reviewStats.getMax() == null ? max : Math.max(reviewStats.getMax(), max));
+        });
+        return reviewStats;
+    }
+
+    private Mono<Void> replace(ReviewStats reviewStats, ObjectId generation) {
+
+        var update = new Update()
+                .set("count", reviewStats.getCount())
+                .set("ratingCount", reviewStats.getRatingCount())
+                .set("sum", reviewStats.getSum())
+                .set("min", reviewStats.getMin())
+                .set("max", reviewStats.getMax())
+                .set("histogram", reviewStats.getHistogram())
+                .inc("version", 1L)
+                .set(GENERATION, generation)
+                .setOnInsert(EPOCH, new ObjectId().toHexString());
+        return reactiveMongoTemplate.upsert(byMovieInfoId(reviewStats.getMovieInfoId()), update, ReviewStats.class)
+                .then();
+    }
+
+    private Query byMovieInfoId(Long movieInfoId) {
+        return Query.query(Criteria.where("_id").is(movieInfoId));
+    }
+}
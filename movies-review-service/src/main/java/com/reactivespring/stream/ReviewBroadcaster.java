@@ -0,0 +1,128 @@
+package com.reactivespring.stream;
+
+import com.reactivespring.domain.Review;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Exceptions;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fans new reviews out to the live subscribers of their movie. Every movie with subscribers has
+ * its own multicast sink, so a review is only offered to the subscribers that asked for it.
+ * Each subscriber reads through its own buffer of {@code reviews.stream.bufferSize} reviews;
+ * once a slow subscriber fills it, the {@link SlowConsumerPolicy} decides what gives.
+ * Publishing never waits for a subscriber, nor for another publisher of the same movie: reviews
+ * are queued per movie and whichever publisher finds the queue idle emits them all.
+ */
+@Component
+@Slf4j
+public class ReviewBroadcaster implements ReviewChangeListener {
+
+    public enum SlowConsumerPolicy {
+        DROP_OLDEST,
+        DISCONNECT
+    }
+
+    private final Map<Long, Topic> topics = new ConcurrentHashMap<>();
+    private final AtomicInteger subscribers = new AtomicInteger();
+    private final int bufferSize;
+    private final SlowConsumerPolicy slowConsumerPolicy;
+    private final Counter dropped;
+    private final Counter disconnected;
+
+    public ReviewBroadcaster(@Value("${reviews.stream.bufferSize:256}") int bufferSize,
+                             @Value("${reviews.stream.slowConsumerPolicy:DROP_OLDEST}") SlowConsumerPolicy slowConsumerPolicy,
+                             MeterRegistry meterRegistry) {
+        this.bufferSize = bufferSize;
+        this.slowConsumerPolicy = slowConsumerPolicy;
+        Gauge.builder("reviews.stream.subscribers", subscribers, AtomicInteger::get)
+                .description("Live review stream subscribers")
+                .register(meterRegistry);
+        Gauge.builder("reviews.stream.movies", topics, Map::size)
+                .description("Movies with at least one live review stream subscriber")
+                .register(meterRegistry);
+        this.dropped = Counter.builder("reviews.stream.dropped")
+                .description("Reviews dropped because a subscriber's buffer was full")
+                .register(meterRegistry);
+        this.disconnected = Counter.builder("reviews.stream.disconnected")
+                .description("Subscribers disconnected for falling behind")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void onReviewChange(ReviewChange change) {
+
+        if (change.getType() == ReviewChange.Type.INSERT) {
+            publish(change.getReview());
+        }
+    }
+
+    public void publish(Review review) {
+
+        var topic = topics.get(review.getMovieInfoId());
+        if (topic == null) {
+            return;
+        }
+        topic.pending.offer(review);
+        if (topic.draining.getAndIncrement() != 0) {
+            return;
+        }
+        // the sink only ever sees one emitting thread, so an emission can not fail for that
+        do {
+            Review next;
+            while ((next = topic.pending.poll()) != null) {
+                topic.sink.tryEmitNext(next);
+            }
+        } while (topic.draining.decrementAndGet() != 0);
+    }
+
+    public Flux<Review> subscribe(Long movieInfoId) {
+
+        return Flux.defer(() -> {
+            var topic = topics.compute(movieInfoId, (id, existing) -> {
+                var current = existing == null ? new Topic() : existing;
+                current.subscribers++;
+                return current;
+            });
+            subscribers.incrementAndGet();
+
+            return buffer(topic.sink.asFlux())
+                    .doFinally(signal -> {
+                        subscribers.decrementAndGet();
+                        topics.computeIfPresent(movieInfoId, (id, current) -> --current.subscribers == 0 ? null : current);
+                    });
+        });
+    }
+
+    private Flux<Review> buffer(Flux<Review> reviews) {
+
+        if (slowConsumerPolicy == SlowConsumerPolicy.DISCONNECT) {
+            return reviews.onBackpressureBuffer(bufferSize, review -> disconnected.increment(), BufferOverflowStrategy.ERROR)
+                    .onErrorResume(Exceptions::isOverflow, e -> {
+                        log.info("Disconnecting a review stream subscriber that fell {} reviews behind", bufferSize);
+                        return Flux.empty();
+                    });
+        }
+        return reviews.onBackpressureBuffer(bufferSize, review -> dropped.increment(), BufferOverflowStrategy.DROP_OLDEST);
+    }
+
+    private static class Topic {
+
+        private final Sinks.Many<Review> sink = Sinks.many().multicast().directBestEffort();
+        private final Queue<Review> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger draining = new AtomicInteger();
+        private int subscribers;
+    }
+}
@@ -0,0 +1,38 @@
+package com.reactivespring.stream;
+
+import com.reactivespring.domain.Review;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A write to the reviews collection. {@code review} is the review after the write and is
+ * {@code null} for deletes, which only carry the id.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReviewChange {
+
+    public enum Type {
+        INSERT,
+        UPDATE,
+        DELETE
+    }
+
+    private Type type;
+    private String reviewId;
+    private Review review;
+
+    public static ReviewChange inserted(Review review) {
+        return new ReviewChange(Type.INSERT, review.getReviewId(), review);
+    }
+
+    public static ReviewChange updated(Review review) {
+        return new ReviewChange(Type.UPDATE, review.getReviewId(), review);
+    }
+
+    public static ReviewChange deleted(String reviewId) {
+        return new ReviewChange(Type.DELETE, reviewId, null);
+    }
+}
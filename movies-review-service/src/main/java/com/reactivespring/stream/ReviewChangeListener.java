@@ -0,0 +1,10 @@
+package com.reactivespring.stream;
+
+/**
+ * Gets told about every review write, see {@link ReviewEvents}. Called on the thread that
+ * delivers the change, so implementations must not block.
+ */
+public interface ReviewChangeListener {
+
+    void onReviewChange(ReviewChange change);
+}
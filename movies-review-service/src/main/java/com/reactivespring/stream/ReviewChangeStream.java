@@ -0,0 +1,167 @@
+package com.reactivespring.stream;
+
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import com.reactivespring.domain.ChangeStreamToken;
+import com.reactivespring.domain.Review;
+import com.reactivespring.repository.ReviewLayout;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.ChangeStreamEvent;
+import org.springframework.data.mongodb.core.ChangeStreamOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import javax.annotation.PreDestroy;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * Follows the reviews collection through one Mongo change stream per instance and hands every
+ * write, whichever instance made it, to {@link ReviewEvents}. The resume token is saved every
+ * {@code reviews.events.changeStream.tokenSaveInterval} under the consumer id, so a restart
+ * picks up where the last run left off; changes since the last save are delivered again. Every
+ * instance follows all the changes, so each needs its own consumer id: the host name unless
+ * {@code reviews.events.changeStream.consumerId} is set.
+ * Needs a replica set and the {@link ReviewLayout#DOCUMENT} layout.
+ */
+@Component
+@ConditionalOnProperty(name = "reviews.events.changeStream.enabled", havingValue = "true")
+@Slf4j
+public class ReviewChangeStream {
+
+    // the resume token is older than the oplog, or no longer valid
+    private static final int CHANGE_STREAM_HISTORY_LOST = 286;
+    private static final int CHANGE_STREAM_FATAL_ERROR = 280;
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final ReviewEvents reviewEvents;
+    private final String consumerId;
+    private final Duration tokenSaveInterval;
+    private Disposable subscription;
+
+    public ReviewChangeStream(ReactiveMongoTemplate reactiveMongoTemplate, ReviewEvents reviewEvents,
+                              @Value("${reviews.events.changeStream.consumerId:}") String consumerId,
+                              @Value("${reviews.events.changeStream.tokenSaveInterval:1s}") Duration tokenSaveInterval,
+                              @Value("${reviews.storage.layout:DOCUMENT}") ReviewLayout layout) {
+        if (layout != ReviewLayout.DOCUMENT) {
+            throw new IllegalStateException("Review change streams follow the review documents and need reviews.storage.layout DOCUMENT");
+        }
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.reviewEvents = reviewEvents;
+        this.consumerId = consumerId.isBlank() ? hostName() : consumerId;
+        this.tokenSaveInterval = tokenSaveInterval;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+
+        log.info("Following review changes as consumer {}", consumerId);
+        subscription = watch().subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+
+    Flux<ChangeStreamToken> watch() {
+
+        return reactiveMongoTemplate.findById(consumerId, ChangeStreamToken.class)
+                .map(token -> Optional.of(BsonDocument.parse(token.getResumeToken())))
+                .defaultIfEmpty(Optional.empty())
+                .flatMapMany(resumeToken -> changes(resumeToken.orElse(null)))
+                .doOnNext(event -> toChange(event).ifPresent(reviewEvents::dispatch))
+                .map(ChangeStreamEvent::getResumeToken)
+                .sample(tokenSaveInterval)
+                .concatMap(this::saveToken)
+                .onErrorResume(this::isHistoryLost, e -> {
+                    log.warn("Review change stream can not resume from the saved token, starting from now", e);
+                    return reactiveMongoTemplate.remove(Query.query(Criteria.where("_id").is(consumerId)), ChangeStreamToken.class)
+                            .then(Mono.error(e));
+                })
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                        .maxBackoff(Duration.ofSeconds(30))
+                        .doBeforeRetry(signal -> log.warn("Review change stream failed, reopening it", signal.failure())));
+    }
+
+    private Flux<ChangeStreamEvent<Review>> changes(BsonDocument resumeToken) {
+
+        var options = ChangeStreamOptions.builder()
+                .filter(Aggregation.newAggregation(
+                        Aggregation.match(Criteria.where("operationType").in("insert", "update", "replace", "delete"))))
+                .fullDocumentLookup(FullDocument.UPDATE_LOOKUP);
+        if (resumeToken != null) {
+            options.resumeAfter(resumeToken);
+        }
+        return reactiveMongoTemplate.changeStream(reactiveMongoTemplate.getCollectionName(Review.class),
+                options.build(), Review.class);
+    }
+
+    private Optional<ReviewChange> toChange(ChangeStreamEvent<Review> event) {
+
+        if (event.getOperationType() == null) {
+            return Optional.empty();
+        }
+        switch (event.getOperationType()) {
+            case INSERT:
+                return Optional.ofNullable(event.getBody()).map(ReviewChange::inserted);
+            case UPDATE:
+            case REPLACE:
+                return Optional.ofNullable(event.getBody()).map(ReviewChange::updated);
+            case DELETE:
+                return Optional.ofNullable(event.getRaw())
+                        .map(ChangeStreamDocument::getDocumentKey)
+                        .map(documentKey -> ReviewChange.deleted(idOf(documentKey.get("_id"))));
+            default:
+                return Optional.empty();
+        }
+    }
+
+    private String idOf(BsonValue id) {
+        return id.isObjectId() ? id.asObjectId().getValue().toHexString() : id.asString().getValue();
+    }
+
+    private Mono<ChangeStreamToken> saveToken(BsonValue resumeToken) {
+        return reactiveMongoTemplate.save(new ChangeStreamToken(consumerId, resumeToken.asDocument().toJson(), Instant.now()));
+    }
+
+    private static String hostName() {
+
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            throw new IllegalStateException("No host name to follow review changes as, set reviews.events.changeStream.consumerId", e);
+        }
+    }
+
+    private boolean isHistoryLost(Throwable e) {
+
+        for (var cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof MongoCommandException) {
+                var code = ((MongoCommandException) cause).getErrorCode();
+                return code == CHANGE_STREAM_HISTORY_LOST || code == CHANGE_STREAM_FATAL_ERROR;
+            }
+        }
+        return false;
+    }
+}
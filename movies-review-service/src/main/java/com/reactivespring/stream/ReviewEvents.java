@@ -0,0 +1,48 @@
+package com.reactivespring.stream;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Hands review writes to every {@link ReviewChangeListener}. By default the writes made by this
+ * instance are handed over as they happen. With {@code reviews.events.changeStream.enabled}
+ * the writes of all instances arrive through {@link ReviewChangeStream} instead, and the local
+ * ones are skipped so nothing is delivered twice.
+ */
+@Component
+@Slf4j
+public class ReviewEvents {
+
+    private final List<ReviewChangeListener> listeners;
+    private final boolean changeStreamEnabled;
+
+    public ReviewEvents(List<ReviewChangeListener> listeners,
+                        @Value("${reviews.events.changeStream.enabled:false}") boolean changeStreamEnabled) {
+        this.listeners = listeners;
+        this.changeStreamEnabled = changeStreamEnabled;
+    }
+
+    /**
+     * A write made through this instance.
+     */
+    public void local(ReviewChange change) {
+
+        if (!changeStreamEnabled) {
+            dispatch(change);
+        }
+    }
+
+    void dispatch(ReviewChange change) {
+
+        listeners.forEach(listener -> {
+            try {
+                listener.onReviewChange(change);
+            } catch (RuntimeException e) {
+                log.error("Review change listener {} failed for review {}", listener, change.getReviewId(), e);
+            }
+        });
+    }
+}
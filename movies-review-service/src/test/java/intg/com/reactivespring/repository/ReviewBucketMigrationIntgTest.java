@@ -0,0 +1,101 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.Review;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class ReviewBucketMigrationIntgTest {
+
+    @Autowired
+    ReviewReactiveRepository reviewReactiveRepository;
+
+    @Autowired
+    ReactiveMongoTemplate reactiveMongoTemplate;
+
+    ReviewReactiveRepositoryCustomImpl bucketedRepository;
+    ReviewBucketMigration reviewBucketMigration;
+
+    @BeforeEach
+    void setUp() {
+        var reviewBucketStore = new ReviewBucketStore(reactiveMongoTemplate, ReviewLayout.BUCKETED, 2);
+        bucketedRepository = new ReviewReactiveRepositoryCustomImpl(reactiveMongoTemplate, reviewBucketStore);
+        reviewBucketMigration = new ReviewBucketMigration(reactiveMongoTemplate, reviewBucketStore, false);
+
+        reviewReactiveRepository.deleteAll().block();
+        reviewReactiveRepository.saveAll(List.of(
+                        new Review("1", 1L, "Awesome Movie", 9.0),
+                        new Review("2", 1L, "Good Movie", 7.0),
+                        new Review("3", 1L, "Excellent Movie", 9.5),
+                        new Review("4", 2L, "Bad Movie", 2.0),
+                        new Review("5", 1L, "Fine Movie", 6.0)))
+                .blockLast();
+    }
+
+    @AfterEach
+    void tearDown() {
+        reviewReactiveRepository.deleteAll().block();
+        bucketedRepository.deleteAll().block();
+        reactiveMongoTemplate.remove(new Query(), ReviewBucketMigration.MARKER_COLLECTION).block();
+    }
+
+    @Test
+    void migrate() {
+
+        assertEquals(5L, reviewBucketMigration.migrate().block());
+
+        assertEquals(3L, bucketCount());
+        assertEquals(5L, bucketedRepository.count().block());
+        assertEquals(List.of("1", "2", "3", "5"), reviewIds(1L));
+        assertEquals(List.of("4"), reviewIds(2L));
+        assertEquals(5L, reviewReactiveRepository.count().block());
+    }
+
+    @Test
+    void migrate_again() {
+
+        reviewBucketMigration.migrate().block();
+        bucketedRepository.save(new Review("6", 2L, "Written after the migration", 5.0)).block();
+
+        assertEquals(5L, reviewBucketMigration.migrate().block());
+
+        assertEquals(3L, bucketCount());
+        assertEquals(List.of("4"), reviewIds(2L));
+    }
+
+    @Test
+    void migrateOnce() {
+
+        assertEquals(5L, reviewBucketMigration.migrateOnce().block());
+        bucketedRepository.save(new Review("6", 2L, "Written after the migration", 5.0)).block();
+
+        assertNull(reviewBucketMigration.migrateOnce().block());
+
+        assertEquals(List.of("4", "6"), reviewIds(2L));
+    }
+
+    private List<String> reviewIds(Long movieInfoId) {
+
+        return bucketedRepository.findReviewPage(List.of(movieInfoId), ReviewSort.ID, null, 10, null)
+                .map(Review::getReviewId)
+                .collect(Collectors.toList())
+                .block();
+    }
+
+    private Long bucketCount() {
+        return reactiveMongoTemplate.count(new Query(), ReviewBucketStore.COLLECTION).block();
+    }
+}
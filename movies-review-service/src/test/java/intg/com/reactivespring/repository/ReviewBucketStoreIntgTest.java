@@ -0,0 +1,97 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.Review;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class ReviewBucketStoreIntgTest {
+
+    @Autowired
+    ReactiveMongoTemplate reactiveMongoTemplate;
+
+    ReviewBucketStore reviewBucketStore;
+    ReviewReactiveRepositoryCustomImpl bucketedRepository;
+
+    @BeforeEach
+    void setUp() {
+        reviewBucketStore = new ReviewBucketStore(reactiveMongoTemplate, ReviewLayout.BUCKETED, 2);
+        bucketedRepository = new ReviewReactiveRepositoryCustomImpl(reactiveMongoTemplate, reviewBucketStore);
+        reviewBucketStore.ensureIndexes().block();
+
+        bucketedRepository.saveAll(List.of(
+                        new Review("1", 1L, "Awesome Movie", 9.0),
+                        new Review("2", 1L, "Good Movie", 7.0),
+                        new Review("3", 2L, "Bad Movie", 2.0)))
+                .blockLast();
+    }
+
+    @AfterEach
+    void tearDown() {
+        bucketedRepository.deleteAll().block();
+    }
+
+    @Test
+    void findAndModify_movedToAnotherMovie() {
+
+        bucketedRepository.findAndModify("1", 0L, new Update().set("movieInfoId", 2L).inc("version", 1L)).block();
+
+        assertEquals(List.of("2"), reviewIds(1L));
+        assertEquals(List.of("1", "3"), reviewIds(2L));
+        assertEquals(0L, reactiveMongoTemplate.count(new Query(), ReviewBucketStore.MOVES).block());
+    }
+
+    @Test
+    void repairMoves_cutShortBeforeRecorded() {
+
+        // updated to the new movie inside its old bucket, then the service stopped
+        reactiveMongoTemplate.updateFirst(Query.query(Criteria.where("reviews._id").is("1")),
+                new Update().set("reviews.$.movieInfoId", 2L), ReviewBucketStore.COLLECTION).block();
+
+        assertEquals(1L, reviewBucketStore.repairMoves().block());
+
+        assertEquals(List.of("2"), reviewIds(1L));
+        assertEquals(List.of("1", "3"), reviewIds(2L));
+    }
+
+    @Test
+    void repairMoves_cutShortAfterPulled() {
+
+        // recorded and pulled out of its old bucket, then the service stopped
+        var review = new Document("_id", "1").append("movieInfoId", 2L).append("comment", "Awesome Movie")
+                .append("rating", 9.0).append("version", 1L);
+        reactiveMongoTemplate.insert(new Document("_id", "1").append("review", review), ReviewBucketStore.MOVES).block();
+        reactiveMongoTemplate.updateFirst(Query.query(Criteria.where("reviews._id").is("1")),
+                new Update().pull("reviews", new Document("_id", "1")).inc("count", -1), ReviewBucketStore.COLLECTION).block();
+
+        assertEquals(1L, reviewBucketStore.repairMoves().block());
+
+        assertEquals(List.of("2"), reviewIds(1L));
+        assertEquals(List.of("1", "3"), reviewIds(2L));
+        assertEquals(0L, reactiveMongoTemplate.count(new Query(), ReviewBucketStore.MOVES).block());
+        assertEquals(0L, reviewBucketStore.repairMoves().block());
+    }
+
+    private List<String> reviewIds(Long movieInfoId) {
+
+        return bucketedRepository.findReviewPage(List.of(movieInfoId), ReviewSort.ID, null, 10, null)
+                .map(Review::getReviewId)
+                .collect(Collectors.toList())
+                .block();
+    }
+}
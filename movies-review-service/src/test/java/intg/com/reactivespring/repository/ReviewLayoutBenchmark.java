@@ -0,0 +1,89 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.Review;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares write and read throughput of the two review layouts. Only runs with
+ * {@code -Dbenchmark=true}, and only means something against a real Mongo server.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+@Slf4j
+class ReviewLayoutBenchmark {
+
+    static final int MOVIES = 5;
+    static final int REVIEWS_PER_MOVIE = 2000;
+    static final int WRITE_CONCURRENCY = 8;
+    static final int READS = 200;
+    static final int PAGE_SIZE = 100;
+
+    @Autowired
+    ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @Autowired
+    ReviewReactiveRepository reviewReactiveRepository;
+
+    @AfterEach
+    void tearDown() {
+        reviewReactiveRepository.deleteAll().block();
+        reactiveMongoTemplate.dropCollection(ReviewBucketStore.COLLECTION).block();
+    }
+
+    @Test
+    void compareLayouts() {
+
+        for (var layout : ReviewLayout.values()) {
+            var reviewBucketStore = new ReviewBucketStore(reactiveMongoTemplate, layout, 200);
+            reviewBucketStore.ensureIndexes().block();
+            run(layout, new ReviewReactiveRepositoryCustomImpl(reactiveMongoTemplate, reviewBucketStore));
+        }
+    }
+
+    private void run(ReviewLayout layout, ReviewReactiveRepositoryCustom repository) {
+
+        repository.deleteAll().block();
+        var reviews = LongStream.range(0, (long) MOVIES * REVIEWS_PER_MOVIE)
+                .mapToObj(i -> new Review(null, i % MOVIES, "Review " + i, (double) (i % 10)))
+                .collect(Collectors.toList());
+
+        var writeStart = System.nanoTime();
+        Flux.fromIterable(reviews)
+                .flatMap(repository::save, WRITE_CONCURRENCY)
+                .blockLast();
+        var writeSeconds = (System.nanoTime() - writeStart) / 1e9;
+
+        var pageStart = System.nanoTime();
+        Flux.range(0, READS)
+                .concatMap(i -> repository.findReviewPage(List.of((long) (i % MOVIES)), ReviewSort.ID, null, PAGE_SIZE, null).collectList())
+                .blockLast();
+        var pageSeconds = (System.nanoTime() - pageStart) / 1e9;
+
+        var movieStart = System.nanoTime();
+        var read = Flux.range(0, READS / 10)
+                .concatMap(i -> repository.findReviewByMovieInfoId((long) (i % MOVIES)).count())
+                .reduce(0L, Long::sum)
+                .block();
+        var movieSeconds = (System.nanoTime() - movieStart) / 1e9;
+
+        assertEquals((long) READS / 10 * REVIEWS_PER_MOVIE, read);
+        log.info("{} writes: {} reviews/s, first pages: {} pages/s, whole movies: {} reviews/s",
+                layout, Math.round(reviews.size() / writeSeconds), Math.round(READS / pageSeconds),
+                Math.round(read / movieSeconds));
+    }
+}
@@ -0,0 +1,132 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.Review;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs every review repository query in both layouts and fails on a query no index serves, see
+ * {@link QueryPlans}.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@Import(QueryPlans.CommandCapture.class)
+class ReviewQueryPlanIntgTest {
+
+    @Autowired
+    ReviewReactiveRepository reviewReactiveRepository;
+
+    @Autowired
+    ReviewIndexes reviewIndexes;
+
+    @Autowired
+    ReactiveMongoTemplate reactiveMongoTemplate;
+
+    ReviewBucketStore reviewBucketStore;
+    ReviewReactiveRepositoryCustomImpl bucketedRepository;
+
+    @BeforeEach
+    void setUp() {
+
+        reviewBucketStore = new ReviewBucketStore(reactiveMongoTemplate, ReviewLayout.BUCKETED, 2);
+        reviewBucketStore.ensureIndexes().block();
+        bucketedRepository = new ReviewReactiveRepositoryCustomImpl(reactiveMongoTemplate, reviewBucketStore);
+        for (var repository : List.of(reviewReactiveRepository, bucketedRepository)) {
+            repository.saveAll(List.of(
+                            new Review("1", 1L, "Awesome Movie", 9.0),
+                            new Review("2", 1L, "Good Movie", 7.0),
+                            new Review("3", 2L, "Bad Movie", 2.0),
+                            new Review("4", 2L, "Unrated Movie", null)))
+                    .blockLast();
+        }
+        QueryPlans.clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+
+        reviewReactiveRepository.deleteAll().block();
+        bucketedRepository.deleteAll().block();
+    }
+
+    @Test
+    void ensureIndexes_again() {
+
+        reviewIndexes.ensureIndexes().block();
+
+        var indexes = reactiveMongoTemplate.indexOps(Review.class).getIndexInfo()
+                .map(IndexInfo::getName)
+                .collect(Collectors.toSet())
+                .block();
+        assertEquals(Set.of("_id_", "movieInfoId_id", "movieInfoId_rating_id", "rating_id"), indexes);
+    }
+
+    @Test
+    void everyQueryUsesAnIndex() {
+
+        runEveryQuery(reviewReactiveRepository);
+
+        var collectionScans = QueryPlans.collectionScans(reactiveMongoTemplate,
+                reactiveMongoTemplate.getCollectionName(Review.class));
+        assertTrue(collectionScans.isEmpty(), "Queries without an index: " + collectionScans);
+    }
+
+    @Test
+    void everyBucketedQueryUsesAnIndex() {
+
+        runEveryQuery(bucketedRepository);
+        reviewBucketStore.repairMoves().block();
+
+        var collectionScans = new ArrayList<String>();
+        collectionScans.addAll(QueryPlans.collectionScans(reactiveMongoTemplate, ReviewBucketStore.COLLECTION));
+        collectionScans.addAll(QueryPlans.collectionScans(reactiveMongoTemplate, ReviewBucketStore.MOVES));
+        assertTrue(collectionScans.isEmpty(), "Queries without an index: " + collectionScans);
+    }
+
+    private void runEveryQuery(ReviewReactiveRepositoryCustom repository) {
+
+        var review = repository.findById("2").block();
+        repository.findAll().blockLast();
+        repository.findReviewByMovieInfoId(1L).blockLast();
+        repository.findReviewByMovieInfoIdIn(List.of(1L, 2L)).blockLast();
+        for (var sort : ReviewSort.values()) {
+            var after = ReviewCursor.after(sort, review);
+            repository.findReviewPage(null, sort, null, 2, null).blockLast();
+            repository.findReviewPage(null, sort, after, 2, null).blockLast();
+            repository.findReviewPage(List.of(1L, 2L), sort, null, 2, List.of("comment")).blockLast();
+            repository.findReviewPage(List.of(1L, 2L), sort, after, 2, List.of("comment")).blockLast();
+        }
+        var unrated = ReviewCursor.after(ReviewSort.RATING, new Review("4", 2L, "Unrated Movie", null));
+        repository.findReviewPage(List.of(2L), ReviewSort.RATING, unrated, 2, null).blockLast();
+        repository.aggregateReviews(Criteria.where("movieInfoId").is(1L),
+                List.of(Aggregation.group("movieInfoId").count().as("count"))).blockLast();
+        repository.aggregateReviews(new Criteria(),
+                List.of(Aggregation.group("movieInfoId").count().as("count"))).blockLast();
+        repository.findAndModify("1", 0L, new Update().set("rating", 8.0)).block();
+        repository.findAndModify("1", null, new Update().set("comment", "Still awesome")).block();
+        repository.findAndModify("4", null, new Update().set("movieInfoId", 1L)).block();
+        repository.insertUnordered(List.of(new Review(null, 3L, "New Movie", 5.0))).block();
+        repository.existsById("3").block();
+        repository.count().block();
+        repository.save(review).block();
+        repository.deleteById("3").block();
+    }
+}
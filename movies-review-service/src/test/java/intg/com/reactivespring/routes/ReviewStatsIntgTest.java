@@ -0,0 +1,178 @@
+package com.reactivespring.routes;
+
+import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewStats;
+import com.reactivespring.repository.ReviewReactiveRepository;
+import com.reactivespring.repository.ReviewStatsRepository;
+import com.reactivespring.service.ReviewStatsService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@AutoConfigureWebTestClient
+class ReviewStatsIntgTest {
+
+    @Autowired
+    ReviewReactiveRepository reviewReactiveRepository;
+
+    @Autowired
+    ReviewStatsRepository reviewStatsRepository;
+
+    @Autowired
+    ReviewStatsService reviewStatsService;
+
+    @Autowired
+    WebTestClient webTestClient;
+
+    static String REVIEW_URL = "/v1/reviews";
+    static String REVIEW_STATS_URL = "/v1/reviews/stats";
+
+    @BeforeEach
+    void setUp() {
+        reviewReactiveRepository.deleteAll().block();
+        reviewStatsRepository.deleteAll().block();
+    }
+
+    @AfterEach
+    void tearDown() {
+        reviewReactiveRepository.deleteAll().block();
+        reviewStatsRepository.deleteAll().block();
+    }
+
+    @Test
+    void getReviewStats() {
+
+        addReview(new Review("1", 1L, "Awesome Movie", 9.0));
+        addReview(new Review("2", 1L, "Good Movie", 7.5));
+        addReview(new Review("3", 1L, "Excellent Movie", 9.5));
+        addReview(new Review("4", 2L, "Bad Movie", 2.0));
+
+        var reviewStats = getStats(1L);
+        assertEquals(3, reviewStats.getCount());
+        assertEquals(26.0, reviewStats.getSum());
+        assertEquals(7.5, reviewStats.getMin());
+        assertEquals(9.5, reviewStats.getMax());
+        assertEquals(Map.of("7", 1L, "9", 2L), reviewStats.getHistogram());
+        assertEquals(3, reviewStats.getVersion());
+    }
+
+    @Test
+    void getReviewStats_noReviews() {
+
+        var reviewStats = getStats(99L);
+        assertEquals(0, reviewStats.getCount());
+        assertNull(reviewStats.getAverage());
+    }
+
+    @Test
+    void getReviewStats_invalidMovieInfoId() {
+
+        webTestClient.get()
+                .uri(REVIEW_STATS_URL + "?movieInfoId=abc")
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+    }
+
+    @Test
+    void getReviewStats_afterUpdateAndDelete() {
+
+        addReview(new Review("1", 1L, "Awesome Movie", 9.0));
+        addReview(new Review("2", 1L, "Good Movie", 7.5));
+        addReview(new Review("3", 1L, "Excellent Movie", 9.5));
+
+        webTestClient.put()
+                .uri(REVIEW_URL + "/{id}", "2")
+                .bodyValue(new Review("2", 1L, "Great Movie", 8.0))
+                .exchange()
+                .expectStatus()
+                .isOk();
+
+        webTestClient.delete()
+                .uri(REVIEW_URL + "/{id}", "3")
+                .exchange()
+                .expectStatus()
+                .isNoContent();
+
+        var reviewStats = getStats(1L);
+        assertEquals(2, reviewStats.getCount());
+        assertEquals(17.0, reviewStats.getSum());
+        assertEquals(8.0, reviewStats.getMin());
+        assertEquals(9.0, reviewStats.getMax());
+        assertEquals(8.5, reviewStats.getAverage());
+        assertEquals(Map.of("8", 1L, "9", 1L), reviewStats.getHistogram());
+    }
+
+    @Test
+    void rebuildAll() {
+
+        addReview(new Review("1", 1L, "Awesome Movie", 9.0));
+        // written around the handler, so the stats drift
+        reviewReactiveRepository.saveAll(List.of(
+                        new Review("2", 1L, "Good Movie", 7.0),
+                        new Review("3", 2L, "Bad Movie", 2.0)))
+                .blockLast();
+        reviewStatsRepository.save(ReviewStats.empty(3L)).block();
+
+        var rebuilt = reviewStatsService.rebuildAll().block();
+
+        assertEquals(2, rebuilt);
+        var reviewStats = getStats(1L);
+        assertEquals(2, reviewStats.getCount());
+        assertEquals(7.0, reviewStats.getMin());
+        assertEquals(9.0, reviewStats.getMax());
+        assertEquals(1, getStats(2L).getCount());
+        assertEquals(false, reviewStatsRepository.existsById(3L).block());
+    }
+
+    @Test
+    void rebuildAll_dropsStatsWrittenBefore() {
+
+        addReview(new Review("1", 1L, "Awesome Movie", 9.0));
+        addReview(new Review("2", 2L, "Good Movie", 7.0));
+        // deleted around the handler, so the stats of movie 2 outlive its reviews
+        reviewReactiveRepository.deleteById("2").block();
+
+        assertEquals(1, reviewStatsService.rebuildAll().block());
+        assertEquals(1, getStats(1L).getCount());
+        assertEquals(false, reviewStatsRepository.existsById(2L).block());
+
+        addReview(new Review("3", 2L, "Bad Movie", 2.0));
+        assertEquals(1, getStats(2L).getCount());
+    }
+
+    private void addReview(Review review) {
+
+        webTestClient.post()
+                .uri(REVIEW_URL)
+                .bodyValue(review)
+                .exchange()
+                .expectStatus()
+                .isCreated();
+    }
+
+    private ReviewStats getStats(Long movieInfoId) {
+
+        return webTestClient.get()
+                .uri(REVIEW_STATS_URL + "?movieInfoId={id}", movieInfoId)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(ReviewStats.class)
+                .returnResult()
+                .getResponseBody();
+    }
+}
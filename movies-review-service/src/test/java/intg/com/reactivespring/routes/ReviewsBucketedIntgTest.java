@@ -0,0 +1,11 @@
+package com.reactivespring.routes;
+
+import org.springframework.test.context.TestPropertySource;
+
+/**
+ * Runs the review API tests against the bucketed layout, with buckets small enough that a
+ * movie's reviews span several of them.
+ */
+@TestPropertySource(properties = {"reviews.storage.layout=BUCKETED", "reviews.storage.bucketSize=2"})
+class ReviewsBucketedIntgTest extends ReviewsIntgTest {
+}
@@ -0,0 +1,7 @@
+package com.reactivespring.routes;
+
+import org.springframework.test.context.TestPropertySource;
+
+@TestPropertySource(properties = {"reviews.storage.layout=BUCKETED", "reviews.storage.bucketSize=2"})
+class ReviewsBulkBucketedIntgTest extends ReviewsBulkIntgTest {
+}
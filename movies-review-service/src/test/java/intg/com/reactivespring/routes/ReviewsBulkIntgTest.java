@@ -0,0 +1,120 @@
+package com.reactivespring.routes;
+
+import com.reactivespring.domain.BulkReviewResult;
+import com.reactivespring.domain.Review;
+import com.reactivespring.repository.ReviewReactiveRepository;
+import com.reactivespring.repository.ReviewStatsRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "reviews.bulk.batchSize=2")
+@ActiveProfiles("test")
+@AutoConfigureWebTestClient
+class ReviewsBulkIntgTest {
+
+    @Autowired
+    ReviewReactiveRepository reviewReactiveRepository;
+
+    @Autowired
+    ReviewStatsRepository reviewStatsRepository;
+
+    @Autowired
+    WebTestClient webTestClient;
+
+    static String REVIEW_BULK_URL = "/v1/reviews/bulk";
+
+    @BeforeEach
+    void setUp() {
+        reviewStatsRepository.deleteAll().block();
+        reviewReactiveRepository.save(new Review("1001", 1L, "Awesome Movie", 9.0)).block();
+    }
+
+    @AfterEach
+    void tearDown() {
+        reviewReactiveRepository.deleteAll().block();
+        reviewStatsRepository.deleteAll().block();
+    }
+
+    @Test
+    void addReviews() {
+
+        var body = "{\"movieInfoId\":1, \"comment\": \"Excellent Movie\", \"rating\":8.0}\n"
+                + "{\"movieInfoId\":null, \"comment\": \"No Movie\", \"rating\":-1.0}\n"
+                + "{\"reviewId\":\"1001\", \"movieInfoId\":1, \"comment\": \"Duplicate\", \"rating\":7.0}\n"
+                + "{\"movieInfoId\":2, \"comment\": \"Good Movie\", \"rating\":7.0}\n"
+                + "{\"movieInfoId\":2, \"comment\": \"Bad Movie\", \"rating\":2.0}\n";
+
+        var results = webTestClient.post()
+                .uri(REVIEW_BULK_URL)
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .bodyValue(body)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBodyList(BulkReviewResult.class)
+                .hasSize(5)
+                .returnResult()
+                .getResponseBody();
+
+        assertEquals(0, results.get(0).getIndex());
+        assertNotNull(results.get(0).getReviewId());
+        assertEquals("Review.movieInfoId: must not be null,Review.rating: must not be a negative value", results.get(1).getError());
+        assertNull(results.get(2).getReviewId());
+        assertNotNull(results.get(2).getError());
+        assertNotNull(results.get(3).getReviewId());
+        assertEquals(4, results.get(4).getIndex());
+
+        assertEquals(4, reviewReactiveRepository.count().block());
+        var reviewStats = reviewStatsRepository.findById(2L).block();
+        assertEquals(2, reviewStats.getCount());
+        assertEquals(2.0, reviewStats.getMin());
+        assertEquals(7.0, reviewStats.getMax());
+    }
+
+    @Test
+    void addReviews_malformedLine() {
+
+        var body = "{\"movieInfoId\":1, \"comment\": \"Excellent Movie\", \"rating\":8.0}\n"
+                + "{\"movieInfoId\":1, \"comment\": \"Cut short\n"
+                + "{\"movieInfoId\":1, \"comment\": \"Wrong rating\", \"rating\":\"great\"}\n"
+                + "\n"
+                + "{\"movieInfoId\":2, \"comment\": \"Good Movie\", \"rating\":7.0}\n";
+
+        var results = webTestClient.post()
+                .uri(REVIEW_BULK_URL)
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .bodyValue(body)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBodyList(BulkReviewResult.class)
+                .hasSize(4)
+                .returnResult()
+                .getResponseBody();
+
+        assertNotNull(results.get(0).getReviewId());
+        assertNull(results.get(1).getReviewId());
+        assertTrue(results.get(1).getError().startsWith("Review could not be read"));
+        assertNull(results.get(2).getReviewId());
+        assertTrue(results.get(2).getError().startsWith("Review could not be read"));
+        assertEquals(3, results.get(3).getIndex());
+        assertNotNull(results.get(3).getReviewId());
+
+        assertEquals(3, reviewReactiveRepository.count().block());
+    }
+}
@@ -0,0 +1,193 @@
+package com.reactivespring.routes;
+
+import com.reactivespring.cache.ReviewResponseCache;
+import com.reactivespring.domain.Review;
+import com.reactivespring.repository.ReviewReactiveRepository;
+import com.reactivespring.service.ReviewStatsService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"reviews.cache.enabled=true", "reviews.page.defaultLimit=2"})
+@ActiveProfiles("test")
+@AutoConfigureWebTestClient
+class ReviewsCacheIntgTest {
+
+    @Autowired
+    ReviewReactiveRepository reviewReactiveRepository;
+
+    @Autowired
+    ReviewResponseCache reviewResponseCache;
+
+    @Autowired
+    ReviewStatsService reviewStatsService;
+
+    @Autowired
+    WebTestClient webTestClient;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    static String REVIEW_URL = "/v1/reviews";
+
+    @BeforeEach
+    void setUp() {
+        reviewReactiveRepository.deleteAll().block();
+        reviewReactiveRepository.saveAll(List.of(
+                        new Review("1", 1L, "Awesome Movie", 9.0),
+                        new Review("2", 2L, "Excellent Movie", 8.0)))
+                .blockLast();
+        reviewResponseCache.invalidate(1L);
+        reviewResponseCache.invalidate(2L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        reviewReactiveRepository.deleteAll().block();
+    }
+
+    @Test
+    void getReviews_servedFromCache() {
+
+        var hits = hits();
+        assertEquals(List.of("1"), getReviewIds(1L));
+
+        // written behind the service's back, so the cached page still answers
+        reviewReactiveRepository.save(new Review("3", 1L, "Good Movie", 7.0)).block();
+
+        assertEquals(List.of("1"), getReviewIds(1L));
+        assertEquals(hits + 1, hits());
+        assertTrue(meterRegistry.get("reviews.cache.bytes").gauge().value() > 0);
+    }
+
+    @Test
+    void getReviews_writtenByAnotherInstance() {
+
+        var eTag = webTestClient.get()
+                .uri(REVIEW_URL + "?movieInfoId=1")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .returnResult(Review.class)
+                .getResponseHeaders()
+                .getETag();
+
+        // the stats are bumped, but no invalidation reaches this instance
+        var review = new Review("3", 1L, "Good Movie", 7.0);
+        reviewReactiveRepository.save(review).block();
+        reviewStatsService.recordAdded(review).block();
+
+        var newETag = webTestClient.get()
+                .uri(REVIEW_URL + "?movieInfoId=1")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .returnResult(Review.class)
+                .getResponseHeaders()
+                .getETag();
+        assertNotEquals(eTag, newETag);
+        assertEquals(List.of("1", "3"), getReviewIds(1L));
+
+        webTestClient.get()
+                .uri(REVIEW_URL + "?movieInfoId=1")
+                .ifNoneMatch(newETag)
+                .exchange()
+                .expectStatus()
+                .isNotModified();
+    }
+
+    @Test
+    void addReview_invalidates() {
+
+        assertEquals(List.of("1"), getReviewIds(1L));
+
+        webTestClient.post()
+                .uri(REVIEW_URL)
+                .bodyValue(new Review("3", 1L, "Good Movie", 7.0))
+                .exchange()
+                .expectStatus()
+                .isCreated();
+
+        assertEquals(List.of("1", "3"), getReviewIds(1L));
+    }
+
+    @Test
+    void updateReview_movedToAnotherMovie_invalidatesBoth() {
+
+        assertEquals(List.of("1"), getReviewIds(1L));
+        assertEquals(List.of("2"), getReviewIds(2L));
+
+        webTestClient.put()
+                .uri(REVIEW_URL + "/{id}", "1")
+                .bodyValue(new Review("1", 2L, "Awesome Movie", 9.0))
+                .exchange()
+                .expectStatus()
+                .isOk();
+
+        assertEquals(List.of(), getReviewIds(1L));
+        assertEquals(List.of("1", "2"), getReviewIds(2L));
+    }
+
+    @Test
+    void deleteReview_invalidates() {
+
+        reviewReactiveRepository.save(new Review("3", 1L, "Good Movie", 7.0)).block();
+        reviewReactiveRepository.save(new Review("4", 1L, "Bad Movie", 2.0)).block();
+
+        // the third review only decides the cursor of the cached page
+        webTestClient.get()
+                .uri(REVIEW_URL + "?movieInfoId=1")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .exists("X-Next-Cursor");
+
+        webTestClient.delete()
+                .uri(REVIEW_URL + "/{id}", "4")
+                .exchange()
+                .expectStatus()
+                .isNoContent();
+
+        webTestClient.get()
+                .uri(REVIEW_URL + "?movieInfoId=1")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .doesNotExist("X-Next-Cursor");
+    }
+
+    private List<String> getReviewIds(Long movieInfoId) {
+
+        var reviews = webTestClient.get()
+                .uri(REVIEW_URL + "?movieInfoId={id}", movieInfoId)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBodyList(Review.class)
+                .returnResult()
+                .getResponseBody();
+        assert reviews != null;
+        return reviews.stream().map(Review::getReviewId).collect(Collectors.toList());
+    }
+
+    private double hits() {
+        return meterRegistry.get("cache.gets").tag("cache", "reviewResponses").tag("result", "hit")
+                .functionCounter().count();
+    }
+}
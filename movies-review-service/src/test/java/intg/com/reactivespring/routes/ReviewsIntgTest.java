@@ -2,20 +2,32 @@ package com.reactivespring.routes;
 
 import com.reactivespring.domain.Review;
 import com.reactivespring.repository.ReviewReactiveRepository;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
 
 import java.net.URI;
+import java.time.Duration;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
 @ActiveProfiles("test")
@@ -28,6 +40,12 @@ class ReviewsIntgTest {
     @Autowired
     WebTestClient webTestClient;
 
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @LocalServerPort
+    int port;
+
     public static String REVIEW_URL = "/v1/reviews";
 
     @BeforeEach
@@ -83,6 +101,104 @@ class ReviewsIntgTest {
                 });
     }
 
+    @Test
+    void getReviews_notModified() {
+
+        var review = webTestClient.post()
+                .uri(REVIEW_URL)
+                .bodyValue(new Review(null, 7001L, "Awesome Movie", 9.0))
+                .exchange()
+                .expectStatus()
+                .isCreated()
+                .expectBody(Review.class)
+                .returnResult()
+                .getResponseBody();
+        assert review != null;
+
+        var eTag = webTestClient.get()
+                .uri(REVIEW_URL + "?movieInfoId={id}", 7001L)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .returnResult(Review.class)
+                .getResponseHeaders()
+                .getETag();
+        assert eTag != null;
+
+        webTestClient.get()
+                .uri(REVIEW_URL + "?movieInfoId={id}", 7001L)
+                .ifNoneMatch(eTag)
+                .exchange()
+                .expectStatus()
+                .isNotModified()
+                .expectBody()
+                .isEmpty();
+
+        // the rating aggregate stays the same, the review set does not
+        webTestClient.patch()
+                .uri(REVIEW_URL + "/{id}", review.getReviewId())
+                .bodyValue(Map.of("comment", "Still an Awesome Movie"))
+                .exchange()
+                .expectStatus()
+                .isOk();
+
+        webTestClient.get()
+                .uri(REVIEW_URL + "?movieInfoId={id}", 7001L)
+                .ifNoneMatch(eTag)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBodyList(Review.class)
+                .consumeWith(result -> {
+                    assertNotEquals(eTag, result.getResponseHeaders().getETag());
+                    assertEquals("Still an Awesome Movie", result.getResponseBody().get(0).getComment());
+                });
+    }
+
+    @Test
+    void getReviews_notModified_writtenBeforeStats() {
+
+        // saved past the handler, like the reviews written before there were stats
+        var review = reviewReactiveRepository.save(new Review(null, 7002L, "Awesome Movie", 9.0)).block();
+        assert review != null;
+
+        var eTag = webTestClient.get()
+                .uri(REVIEW_URL + "?movieInfoId={id}", 7002L)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .valueEquals("Vary", "Accept")
+                .returnResult(Review.class)
+                .getResponseHeaders()
+                .getETag();
+        assert eTag != null;
+
+        webTestClient.patch()
+                .uri(REVIEW_URL + "/{id}", review.getReviewId())
+                .bodyValue(Map.of("comment", "Still an Awesome Movie"))
+                .exchange()
+                .expectStatus()
+                .isOk();
+
+        webTestClient.get()
+                .uri(REVIEW_URL + "?movieInfoId={id}", 7002L)
+                .ifNoneMatch(eTag)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBodyList(Review.class)
+                .consumeWith(result -> assertNotEquals(eTag, result.getResponseHeaders().getETag()));
+
+        webTestClient.get()
+                .uri(REVIEW_URL + "/stats?movieInfoId={id}", 7002L)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody()
+                .jsonPath("$.count").isEqualTo(1);
+    }
+
     @Test
     void updateReview() {
         var newReview = new Review("1001", 2L, "Very Awesome Movie", 10.0);
@@ -102,6 +218,75 @@ class ReviewsIntgTest {
                 });
     }
 
+    @Test
+    void patchReview() {
+
+        webTestClient.patch()
+                .uri(REVIEW_URL + "/{id}", 1001)
+                .bodyValue(Map.of("rating", 7.5))
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(Review.class)
+                .consumeWith(result -> {
+                    var patchedReview = result.getResponseBody();
+                    assertEquals("Awesome Movie", patchedReview.getComment());
+                    assertEquals(7.5, patchedReview.getRating());
+                    assertEquals(1L, patchedReview.getVersion());
+                });
+
+        var savedReview = reviewReactiveRepository.findById("1001").block();
+        assertEquals(1L, savedReview.getMovieInfoId());
+        assertEquals(7.5, savedReview.getRating());
+    }
+
+    @Test
+    void patchReview_versionConflict() {
+
+        webTestClient.patch()
+                .uri(REVIEW_URL + "/{id}", 1001)
+                .bodyValue(Map.of("comment", "First edit", "version", 0))
+                .exchange()
+                .expectStatus()
+                .isOk();
+
+        // a second edit made against the same version lost the race
+        webTestClient.patch()
+                .uri(REVIEW_URL + "/{id}", 1001)
+                .bodyValue(Map.of("comment", "Second edit", "version", 0))
+                .exchange()
+                .expectStatus()
+                .isEqualTo(HttpStatus.CONFLICT);
+
+        assertEquals("First edit", reviewReactiveRepository.findById("1001").block().getComment());
+    }
+
+    @Test
+    void patchReview_invalid() {
+
+        webTestClient.patch()
+                .uri(REVIEW_URL + "/{id}", 1001)
+                .bodyValue(Map.of("rating", -1.0))
+                .exchange()
+                .expectStatus()
+                .isBadRequest()
+                .expectBody(String.class)
+                .isEqualTo("Review.rating: must not be a negative value");
+
+        assertEquals(9.0, reviewReactiveRepository.findById("1001").block().getRating());
+    }
+
+    @Test
+    void patchReview_notFound() {
+
+        webTestClient.patch()
+                .uri(REVIEW_URL + "/{id}", 1002)
+                .bodyValue(Map.of("rating", 7.5))
+                .exchange()
+                .expectStatus()
+                .isNotFound();
+    }
+
     @Test
     void deleteReview() {
         webTestClient.delete()
@@ -132,6 +317,87 @@ class ReviewsIntgTest {
                 });
     }
 
+    @Test
+    void getReviewsByMovieInfoId_fields() {
+
+        webTestClient.get()
+                .uri(REVIEW_URL + "?movieInfoId=1&sort=rating&limit=1&fields=rating")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .exists("X-Next-Cursor")
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(1)
+                .jsonPath("$[0].reviewId").exists()
+                .jsonPath("$[0].rating").isEqualTo(9.0)
+                .jsonPath("$[0].comment").doesNotExist()
+                .jsonPath("$[0].movieInfoId").doesNotExist();
+
+        webTestClient.get()
+                .uri(REVIEW_URL + "?movieInfoId=1&fields=rating,author")
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+    }
+
+    @Test
+    void getReviewsByMovieInfoIds() {
+
+        var uriBuilder = UriComponentsBuilder.fromUri(URI.create(REVIEW_URL))
+                .queryParam("movieInfoIds", "1,2,3")
+                .build()
+                .toUri();
+
+        webTestClient.get()
+                .uri(uriBuilder)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBodyList(Review.class)
+                .hasSize(3);
+    }
+
+    @Test
+    void lookupReviews_groupedByMovie() {
+
+        webTestClient.post()
+                .uri(REVIEW_URL + "/lookup?group=movie&fields=rating")
+                .bodyValue(List.of(2, 3, 1))
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(3)
+                .jsonPath("$.2.length()").isEqualTo(1)
+                .jsonPath("$.2[0].rating").isEqualTo(8.0)
+                .jsonPath("$.2[0].comment").doesNotExist()
+                .jsonPath("$.3.length()").isEqualTo(0)
+                .jsonPath("$.1.length()").isEqualTo(2);
+    }
+
+    @Test
+    void lookupReviews_tooManyIds() {
+
+        var movieInfoIds = LongStream.rangeClosed(1, 101)
+                .boxed()
+                .collect(Collectors.toList());
+
+        webTestClient.post()
+                .uri(REVIEW_URL + "/lookup")
+                .bodyValue(movieInfoIds)
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+
+        webTestClient.post()
+                .uri(REVIEW_URL + "/lookup")
+                .bodyValue(Map.of("movieInfoIds", List.of(1)))
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+    }
+
     @Test
     void updateReview_validation() {
 
@@ -147,4 +413,156 @@ class ReviewsIntgTest {
                 .expectBody(String.class)
                 .isEqualTo("Review not found for the given review id: 1002");
     }
+
+    @Test
+    void getReviewsByMovieInfoId_withDeadline() {
+
+        webTestClient.get()
+                .uri(REVIEW_URL + "?movieInfoId=2")
+                .header("X-Request-Timeout-Ms", "2000")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBodyList(Review.class)
+                .hasSize(1);
+    }
+
+    @Test
+    void getReviews_deadlinePassed() {
+
+        webTestClient.get()
+                .uri(REVIEW_URL)
+                .header("X-Request-Timeout-Ms", "0")
+                .exchange()
+                .expectStatus()
+                .isEqualTo(HttpStatus.GATEWAY_TIMEOUT)
+                .expectBody(String.class)
+                .isEqualTo("Request deadline already passed");
+    }
+
+    @Test
+    void getReviews_paginated() {
+
+        var firstPage = webTestClient.get()
+                .uri(REVIEW_URL + "?limit=2")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .exists("X-Next-Cursor")
+                .expectBodyList(Review.class)
+                .hasSize(2)
+                .returnResult();
+
+        var cursor = firstPage.getResponseHeaders().getFirst("X-Next-Cursor");
+
+        // the string id sorts before the generated ObjectIds, the cursor has to cross over
+        assertEquals("1001", firstPage.getResponseBody().get(0).getReviewId());
+        webTestClient.get()
+                .uri(REVIEW_URL + "?limit=2&cursor={cursor}", cursor)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .doesNotExist("X-Next-Cursor")
+                .expectBodyList(Review.class)
+                .hasSize(1)
+                .consumeWith(result -> assertEquals(2L, result.getResponseBody().get(0).getMovieInfoId()));
+    }
+
+    @Test
+    void getReviews_sortedByRating() {
+
+        reviewReactiveRepository.save(new Review(null, 1L, "Best Movie", 10.0)).block();
+
+        var firstPage = webTestClient.get()
+                .uri(REVIEW_URL + "?movieInfoId=1&sort=rating&limit=2")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBodyList(Review.class)
+                .returnResult();
+
+        assertEquals(List.of(10.0, 9.0), firstPage.getResponseBody().stream().map(Review::getRating).collect(Collectors.toList()));
+
+        webTestClient.get()
+                .uri(REVIEW_URL + "?movieInfoId=1&sort=rating&limit=2&cursor={cursor}",
+                        firstPage.getResponseHeaders().getFirst("X-Next-Cursor"))
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBodyList(Review.class)
+                .hasSize(1)
+                .consumeWith(result -> assertEquals(9.0, result.getResponseBody().get(0).getRating()));
+    }
+
+    @Test
+    void getReviews_invalidPagination() {
+
+        webTestClient.get()
+                .uri(REVIEW_URL + "?limit=0")
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+
+        webTestClient.get()
+                .uri(REVIEW_URL + "?cursor=not-a-cursor")
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+
+        var cursor = webTestClient.get()
+                .uri(REVIEW_URL + "?limit=1")
+                .exchange()
+                .returnResult(Review.class)
+                .getResponseHeaders()
+                .getFirst("X-Next-Cursor");
+
+        webTestClient.get()
+                .uri(REVIEW_URL + "?sort=rating&cursor={cursor}", cursor)
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+    }
+
+    @Test
+    void getReviewsStream() {
+
+        // the stream only answers with its first review, so subscribe without waiting for it
+        var reviewStream = WebClient.create("http://localhost:" + port)
+                .get()
+                .uri(REVIEW_URL + "/stream?movieInfoId=1")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .retrieve()
+                .bodyToFlux(Review.class);
+
+        StepVerifier.create(reviewStream)
+                .then(() -> {
+                    awaitStreamSubscribers(1);
+                    webTestClient.post()
+                            .uri(REVIEW_URL)
+                            .bodyValue(new Review(null, 2L, "Other Movie", 5.0))
+                            .exchange()
+                            .expectStatus()
+                            .isCreated();
+                    webTestClient.post()
+                            .uri(REVIEW_URL)
+                            .bodyValue(new Review(null, 1L, "Live Review", 8.0))
+                            .exchange()
+                            .expectStatus()
+                            .isCreated();
+                })
+                .expectNextMatches(review -> review.getComment().equals("Live Review"))
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+    }
+
+    private void awaitStreamSubscribers(int count) {
+
+        var subscribers = meterRegistry.get("reviews.stream.subscribers").gauge();
+        Mono.fromSupplier(subscribers::value)
+                .filter(value -> value >= count)
+                .repeatWhenEmpty(repeat -> repeat.delayElements(Duration.ofMillis(10)))
+                .block(Duration.ofSeconds(5));
+    }
 }
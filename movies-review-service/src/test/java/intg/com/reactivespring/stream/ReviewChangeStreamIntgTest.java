@@ -0,0 +1,112 @@
+package com.reactivespring.stream;
+
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import com.reactivespring.domain.ChangeStreamToken;
+import com.reactivespring.domain.Review;
+import com.reactivespring.repository.ReviewReactiveRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * Change streams need a replica set, so the embedded Mongo runs as a single node one here. A
+ * change stream only sees the writes after Mongo answered the command opening it, so the test
+ * watches the commands and writes once that answer came.
+ */
+@SpringBootTest(properties = {
+        "spring.mongodb.embedded.version=4.0.21",
+        "spring.mongodb.embedded.storage.repl-set-name=rs0",
+        "reviews.events.changeStream.enabled=true",
+        "reviews.events.changeStream.consumerId=test",
+        "reviews.events.changeStream.tokenSaveInterval=100ms"})
+@ActiveProfiles("test")
+class ReviewChangeStreamIntgTest {
+
+    @Autowired
+    ReviewReactiveRepository reviewReactiveRepository;
+
+    @Autowired
+    ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @Autowired
+    ReviewBroadcaster reviewBroadcaster;
+
+    static final Set<Integer> OPENING = ConcurrentHashMap.newKeySet();
+    static final AtomicInteger OPENED = new AtomicInteger();
+
+    @TestConfiguration
+    static class ChangeStreamOpenings {
+
+        @Bean
+        MongoClientSettingsBuilderCustomizer changeStreamOpenings() {
+            return settings -> settings.addCommandListener(new CommandListener() {
+                @Override
+                public void commandStarted(CommandStartedEvent event) {
+                    var pipeline = event.getCommand().get("pipeline");
+                    if (event.getCommandName().equals("aggregate") && pipeline != null && pipeline.isArray()
+                            && !pipeline.asArray().isEmpty()
+                            && pipeline.asArray().get(0).asDocument().containsKey("$changeStream")) {
+                        OPENING.add(event.getRequestId());
+                    }
+                }
+
+                @Override
+                public void commandSucceeded(CommandSucceededEvent event) {
+                    if (OPENING.remove(event.getRequestId())) {
+                        OPENED.incrementAndGet();
+                    }
+                }
+            });
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        reviewReactiveRepository.deleteAll().block();
+        reactiveMongoTemplate.dropCollection(ChangeStreamToken.class).block();
+    }
+
+    @Test
+    void writesOfOtherInstancesReachLocalSubscribers() {
+
+        StepVerifier.create(reviewBroadcaster.subscribe(1L))
+                // written straight to Mongo, like another instance would
+                .then(() -> {
+                    awaitChangeStreamOpened();
+                    reviewReactiveRepository.save(new Review(null, 1L, "Awesome Movie", 9.0)).block();
+                })
+                .expectNextMatches(review -> review.getComment().equals("Awesome Movie"))
+                .thenCancel()
+                .verify(Duration.ofSeconds(10));
+
+        var token = Mono.defer(() -> reactiveMongoTemplate.findById("test", ChangeStreamToken.class))
+                .repeatWhenEmpty(repeat -> repeat.delayElements(Duration.ofMillis(50)))
+                .block(Duration.ofSeconds(5));
+        assertNotNull(token.getResumeToken());
+    }
+
+    private void awaitChangeStreamOpened() {
+
+        Mono.fromSupplier(OPENED::get)
+                .filter(opened -> opened >= 1)
+                .repeatWhenEmpty(repeat -> repeat.delayElements(Duration.ofMillis(10)))
+                .block(Duration.ofSeconds(5));
+    }
+}
@@ -1,8 +1,12 @@
+import com.reactivespring.cache.ReviewResponseCache;
 import com.reactivespring.domain.Review;
 import com.reactivespring.exceptionhandler.GlobalErrorHandler;
 import com.reactivespring.handler.ReviewHandler;
 import com.reactivespring.repository.ReviewReactiveRepository;
 import com.reactivespring.router.ReviewRouter;
+import com.reactivespring.service.ReviewStatsService;
+import com.reactivespring.stream.ReviewBroadcaster;
+import com.reactivespring.stream.ReviewEvents;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
@@ -26,6 +30,18 @@ public class ReviewsUnitTest {
     @MockBean
     private ReviewReactiveRepository reviewReactiveRepository;
 
+    @MockBean
+    private ReviewStatsService reviewStatsService;
+
+    @MockBean
+    private ReviewBroadcaster reviewBroadcaster;
+
+    @MockBean
+    private ReviewEvents reviewEvents;
+
+    @MockBean
+    private ReviewResponseCache reviewResponseCache;
+
     @Autowired
     private WebTestClient webTestClient;
 
@@ -38,6 +54,8 @@ public class ReviewsUnitTest {
         //when
         when(reviewReactiveRepository.save(isA(Review.class)))
                 .thenReturn(Mono.just(new Review("abc", 1L, "Awesome Movie", 9.0)));
+        when(reviewStatsService.recordAdded(isA(Review.class)))
+                .thenReturn(Mono.empty());
 
         //then
         webTestClient.post()
@@ -0,0 +1,99 @@
+package com.reactivespring.stream;
+
+import com.reactivespring.domain.Review;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.test.StepVerifier;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ReviewBroadcasterTest {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void publish_onlyToSubscribersOfTheMovie() {
+
+        var reviewBroadcaster = new ReviewBroadcaster(16, ReviewBroadcaster.SlowConsumerPolicy.DROP_OLDEST, meterRegistry);
+
+        StepVerifier.create(reviewBroadcaster.subscribe(1L))
+                .then(() -> {
+                    assertEquals(1.0, meterRegistry.get("reviews.stream.subscribers").gauge().value());
+                    reviewBroadcaster.publish(new Review("1", 2L, "Other Movie", 5.0));
+                    reviewBroadcaster.publish(new Review("2", 1L, "Awesome Movie", 9.0));
+                })
+                .expectNextMatches(review -> review.getReviewId().equals("2"))
+                .thenCancel()
+                .verify();
+
+        assertEquals(0.0, meterRegistry.get("reviews.stream.subscribers").gauge().value());
+        assertEquals(0.0, meterRegistry.get("reviews.stream.movies").gauge().value());
+    }
+
+    @Test
+    void slowSubscriber_dropOldest() {
+
+        var reviewBroadcaster = new ReviewBroadcaster(2, ReviewBroadcaster.SlowConsumerPolicy.DROP_OLDEST, meterRegistry);
+
+        StepVerifier.create(reviewBroadcaster.subscribe(1L), 0)
+                .then(() -> {
+                    for (int i = 1; i <= 5; i++) {
+                        reviewBroadcaster.publish(new Review(String.valueOf(i), 1L, "Review " + i, 5.0));
+                    }
+                })
+                .thenRequest(2)
+                .expectNextMatches(review -> review.getReviewId().equals("4"))
+                .expectNextMatches(review -> review.getReviewId().equals("5"))
+                .thenCancel()
+                .verify();
+
+        assertEquals(3.0, meterRegistry.get("reviews.stream.dropped").counter().count());
+    }
+
+    @Test
+    void slowSubscriber_disconnect() {
+
+        var reviewBroadcaster = new ReviewBroadcaster(2, ReviewBroadcaster.SlowConsumerPolicy.DISCONNECT, meterRegistry);
+
+        StepVerifier.create(reviewBroadcaster.subscribe(1L), 0)
+                .then(() -> {
+                    for (int i = 1; i <= 3; i++) {
+                        reviewBroadcaster.publish(new Review(String.valueOf(i), 1L, "Review " + i, 5.0));
+                    }
+                })
+                .thenRequest(5)
+                .expectNextCount(2)
+                .verifyComplete();
+
+        assertEquals(1.0, meterRegistry.get("reviews.stream.disconnected").counter().count());
+        assertEquals(0.0, meterRegistry.get("reviews.stream.subscribers").gauge().value());
+    }
+
+    @Test
+    void publish_concurrentPublishersLoseNothing() throws InterruptedException {
+
+        var reviewBroadcaster = new ReviewBroadcaster(16, ReviewBroadcaster.SlowConsumerPolicy.DROP_OLDEST, meterRegistry);
+        var received = new AtomicInteger();
+        var subscription = reviewBroadcaster.subscribe(1L).subscribe(review -> received.incrementAndGet());
+
+        var publishers = new ArrayList<Thread>();
+        for (int p = 0; p < 4; p++) {
+            var publisher = new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    reviewBroadcaster.publish(new Review(String.valueOf(i), 1L, "Review " + i, 5.0));
+                }
+            });
+            publishers.add(publisher);
+            publisher.start();
+        }
+        for (var publisher : publishers) {
+            publisher.join();
+        }
+        subscription.dispose();
+
+        assertEquals(4000, received.get());
+    }
+}
@@ -0,0 +1,134 @@
+package com.reactivespring.cache;
+
+import com.github.benmanes.caffeine.cache.AsyncCacheLoader;
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.reactivespring.client.MoviesInfoRestClient;
+import com.reactivespring.deadline.RequestDeadline;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.exception.DeadlineExceededException;
+import com.reactivespring.exception.MoviesInfoClientException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Near cache in front of {@link MoviesInfoRestClient#retrieveMovieInfo(String)}.
+ * Entries older than refreshAfter are still served while a background reload runs, entries older
+ * than expireAfter are evicted, and 404s are remembered for notFoundTtl.
+ * <p>
+ * A load runs in the Reactor context of the caller that starts it, with its deadline swapped for a
+ * shared one as {@link RequestDeadline#share} does, and every caller waits for it only until its
+ * own deadline.
+ */
+@Component
+@Slf4j
+public class MovieInfoCache {
+
+    private MoviesInfoRestClient moviesInfoRestClient;
+    private boolean enabled;
+    private AsyncLoadingCache<String, MovieInfo> movieInfos;
+    private Cache<String, MoviesInfoClientException> notFound;
+    private Duration sharedBudget;
+
+    public MovieInfoCache(MoviesInfoRestClient moviesInfoRestClient,
+                          MeterRegistry meterRegistry,
+                          @Value("${restClient.moviesInfoCache.enabled:true}") boolean enabled,
+                          @Value("${restClient.moviesInfoCache.maximumSize:10000}") long maximumSize,
+                          @Value("${restClient.moviesInfoCache.expireAfter:10m}") Duration expireAfter,
+                          @Value("${restClient.moviesInfoCache.refreshAfter:1m}") Duration refreshAfter,
+                          @Value("${restClient.moviesInfoCache.notFoundTtl:30s}") Duration notFoundTtl,
+                          @Value("${movies.deadline.max:30s}") Duration sharedBudget) {
+        this.moviesInfoRestClient = moviesInfoRestClient;
+        this.enabled = enabled;
+        this.sharedBudget = sharedBudget;
+        this.movieInfos = CaffeineCacheMetrics.monitor(meterRegistry, Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfter)
+                .refreshAfterWrite(refreshAfter)
+                .recordStats()
+                .buildAsync(new MovieInfoLoader()), "movieInfo");
+        this.notFound = CaffeineCacheMetrics.monitor(meterRegistry, Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(notFoundTtl)
+                .recordStats()
+                .build(), "movieInfoNotFound");
+    }
+
+    public Mono<MovieInfo> retrieveMovieInfo(String movieId) {
+
+        if (!enabled) {
+            return moviesInfoRestClient.retrieveMovieInfo(movieId);
+        }
+        return Mono.deferContextual(context -> {
+            var notFoundException = notFound.getIfPresent(movieId);
+            if (notFoundException != null) {
+                return Mono.error(notFoundException);
+            }
+            // copy() so a cancelling caller cannot cancel the load shared with other callers
+            var movieInfo = Mono.fromFuture(movieInfos.get(movieId, (id, executor) -> load(id, context)).copy());
+            return RequestDeadline.from(context)
+                    .map(deadline -> movieInfo.timeout(deadline.remaining(), Mono.error(() ->
+                            new DeadlineExceededException("Request deadline passed while loading MovieInfo " + movieId))))
+                    .orElse(movieInfo);
+        });
+    }
+
+    public void invalidate(String movieId) {
+
+        movieInfos.synchronous().invalidate(movieId);
+        notFound.invalidate(movieId);
+    }
+
+    private class MovieInfoLoader implements AsyncCacheLoader<String, MovieInfo> {
+
+        @Override
+        public CompletableFuture<MovieInfo> asyncLoad(String movieId, Executor executor) {
+
+            return load(movieId, Context.empty());
+        }
+
+        @Override
+        public CompletableFuture<MovieInfo> asyncReload(String movieId, MovieInfo oldValue, Executor executor) {
+
+            // a failed refresh keeps serving the stale entry, a 404 drops it
+            return moviesInfoRestClient.retrieveMovieInfo(movieId)
+                    .onErrorResume(MoviesInfoClientException.class, ex -> {
+                        if (isNotFound(ex)) {
+                            log.info("MovieInfo {} no longer exists, evicting it from the cache", movieId);
+                            notFound.put(movieId, ex);
+                            return Mono.empty();
+                        }
+                        return Mono.error(ex);
+                    })
+                    .toFuture();
+        }
+    }
+
+    private CompletableFuture<MovieInfo> load(String movieId, ContextView context) {
+
+        return moviesInfoRestClient.retrieveMovieInfo(movieId)
+                .doOnError(MoviesInfoClientException.class, ex -> {
+                    if (isNotFound(ex)) {
+                        notFound.put(movieId, ex);
+                    }
+                })
+                .contextWrite(RequestDeadline.share(context, sharedBudget))
+                .toFuture();
+    }
+
+    private boolean isNotFound(MoviesInfoClientException ex) {
+        return ex.getStatusCode() != null && ex.getStatusCode() == HttpStatus.NOT_FOUND.value();
+    }
+}
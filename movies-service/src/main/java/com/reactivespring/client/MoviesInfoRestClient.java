@@ -3,33 +3,77 @@ package com.reactivespring.client;
 import com.reactivespring.domain.MovieInfo;
 import com.reactivespring.exception.MoviesInfoClientException;
 import com.reactivespring.exception.MoviesInfoServerException;
-import com.reactivespring.util.RetryUtil;
+import com.reactivespring.resilience.DownstreamResilience;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+
 @Component
 @Slf4j
 public class MoviesInfoRestClient {
 
     private WebClient webClient;
+    private DownstreamResilience moviesInfoResilience;
+    private RequestCoalescer<String, MovieInfo> requestCoalescer;
+    private ValidatorCache<MovieInfo> validatorCache;
 
     @Value("${restClient.moviesInfoUrl}")
     private String movieInfoUrl;
 
-    public MoviesInfoRestClient(WebClient webClient) {
+    public MoviesInfoRestClient(@Qualifier("moviesInfoWebClient") WebClient webClient,
+                               @Qualifier("moviesInfoResilience") DownstreamResilience moviesInfoResilience,
+                               MeterRegistry meterRegistry,
+                               @Value("${restClient.validators.enabled:true}") boolean validatorsEnabled,
+                               @Value("${restClient.validators.maximumSize:10000}") long validatorsMaximumSize,
+                               @Value("${movies.deadline.max:30s}") Duration sharedBudget) {
         this.webClient = webClient;
+        this.moviesInfoResilience = moviesInfoResilience;
+        this.requestCoalescer = new RequestCoalescer<>("moviesInfo", sharedBudget, meterRegistry);
+        this.validatorCache = new ValidatorCache<>("moviesInfo", validatorsEnabled, validatorsMaximumSize, meterRegistry);
     }
 
     public Mono<MovieInfo> retrieveMovieInfo(String movieId) {
 
-        var url = movieInfoUrl.concat("/{id}");
+        return requestCoalescer.execute(movieId, () -> moviesInfoResilience.hedge(() -> fetchMovieInfo(movieId)));
+    }
+
+    /**
+     * Revalidates the last copy of the movie info, if any, see {@link ValidatorCache}.
+     */
+    private Mono<MovieInfo> fetchMovieInfo(String movieId) {
+
+        var uri = UriComponentsBuilder.fromUriString(movieInfoUrl.concat("/{id}"))
+                .encode()
+                .buildAndExpand(movieId)
+                .toUri();
+
+        return validatorCache.exchange(uri, eTag -> fetchMovieInfo(uri, movieId, eTag))
+                .flatMap(response -> Mono.justOrEmpty(response.getBody()))
+                .transform(call -> moviesInfoResilience.decorate(call))
+                .log();
+    }
+
+    private Mono<ResponseEntity<MovieInfo>> fetchMovieInfo(URI uri, String movieId, String eTag) {
 
         return webClient.get()
-                .uri(url, movieId)
+                .uri(uri)
+                .headers(headers -> {
+                    if (eTag != null) {
+                        headers.setIfNoneMatch(eTag);
+                    }
+                })
                 .retrieve()
                 .onStatus(HttpStatus::is4xxClientError, clientResponse -> {
                     log.info("Status code is: {}", clientResponse.statusCode().value());
@@ -56,10 +100,44 @@ public class MoviesInfoRestClient {
                             .flatMap(responseMessage -> Mono.error(new MoviesInfoServerException(
                                     "Server exception in MoviesInfoService " + responseMessage)));
                 })
-                .bodyToMono(MovieInfo.class)
-                //.retry(3)
-                .retryWhen(RetryUtil.getRetrySpec())//Another way with delay b/w attempts
-                .log();
+                .toEntity(MovieInfo.class);
+    }
+
+    public Flux<MovieInfo> retrieveMovieInfos(List<String> movieIds) {
+
+        return retrieveMovieInfos(movieIds, null);
+    }
+
+    /**
+     * With {@code fields} the movie infos only carry those fields, see {@code GET /v1/movieinfos?fields=}.
+     */
+    public Flux<MovieInfo> retrieveMovieInfos(List<String> movieIds, String fields) {
+
+        var uriBuilder = UriComponentsBuilder.fromUri(URI.create(movieInfoUrl))
+                .queryParam("ids", String.join(",", movieIds));
+        if (fields != null) {
+            uriBuilder.queryParam("fields", fields);
+        }
+        var uri = uriBuilder.build().toUri();
+
+        return webClient.get()
+                .uri(uri)
+                .retrieve()
+                .onStatus(HttpStatus::is4xxClientError, clientResponse -> {
+                    log.info("Status code is: {}", clientResponse.statusCode().value());
+                    return clientResponse.bodyToMono(String.class)
+                            .flatMap(responseMessage -> Mono.error(new MoviesInfoClientException(
+                                    responseMessage, clientResponse.statusCode().value()
+                            )));
+                })
+                .onStatus(HttpStatus::is5xxServerError, clientResponse -> {
+                    log.info("Status code is: {}", clientResponse.statusCode().value());
+                    return clientResponse.bodyToMono(String.class)
+                            .flatMap(responseMessage -> Mono.error(new MoviesInfoServerException(
+                                    "Server exception in MoviesInfoService " + responseMessage)));
+                })
+                .bodyToFlux(MovieInfo.class)
+                .transform(call -> moviesInfoResilience.decorate(call));
     }
 
 }
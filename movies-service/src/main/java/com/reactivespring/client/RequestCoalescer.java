@@ -0,0 +1,79 @@
+package com.reactivespring.client;
+
+import com.reactivespring.deadline.RequestDeadline;
+import com.reactivespring.exception.DeadlineExceededException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Single-flight deduplication of downstream calls: concurrent callers for the same key share one
+ * upstream subscription. The upstream call is cancelled once every caller has cancelled, and its
+ * result or error is delivered to every caller still waiting.
+ * <p>
+ * The upstream call does not run under the {@link RequestDeadline} of the caller that happened
+ * to start it, which would fail every later caller with that caller's deadline. It gets a deadline
+ * of its own, {@code sharedBudget} from when it starts, while each caller waits only until its own
+ * deadline and leaving then counts as cancelling.
+ */
+public class RequestCoalescer<K, V> {
+
+    private final Map<K, Mono<V>> inFlight = new ConcurrentHashMap<>();
+    private final Duration sharedBudget;
+    private final Counter requestsCounter;
+    private final Counter coalescedCounter;
+
+    public RequestCoalescer(String downstream, Duration sharedBudget, MeterRegistry meterRegistry) {
+        this.sharedBudget = sharedBudget;
+        this.requestsCounter = Counter.builder("movies.client.requests")
+                .description("Calls made through the request coalescer")
+                .tag("downstream", downstream)
+                .register(meterRegistry);
+        this.coalescedCounter = Counter.builder("movies.client.requests.coalesced")
+                .description("Calls that joined an identical call already in flight")
+                .tag("downstream", downstream)
+                .register(meterRegistry);
+        meterRegistry.gaugeMapSize("movies.client.requests.inflight",
+                Tags.of("downstream", downstream), inFlight);
+    }
+
+    public Mono<V> execute(K key, Supplier<Mono<V>> call) {
+
+        return Mono.defer(() -> {
+            requestsCounter.increment();
+            var created = new boolean[1];
+            var shared = inFlight.computeIfAbsent(key, k -> {
+                created[0] = true;
+                return share(k, call.get());
+            });
+            if (!created[0]) {
+                coalescedCounter.increment();
+            }
+            return Mono.deferContextual(context -> RequestDeadline.from(context)
+                    .map(deadline -> shared.timeout(deadline.remaining(), Mono.error(() ->
+                            new DeadlineExceededException("Request deadline passed while waiting for " + key))))
+                    .orElse(shared));
+        });
+    }
+
+    private Mono<V> share(K key, Mono<V> upstream) {
+
+        var self = new AtomicReference<Mono<V>>();
+        var shared = upstream
+                .doFinally(signalType -> inFlight.remove(key, self.get()))
+                .contextWrite(context -> RequestDeadline.share(context, sharedBudget))
+                .flux()
+                .publish()
+                .refCount()
+                .next();
+        self.set(shared);
+        return shared;
+    }
+}
@@ -3,57 +3,172 @@ package com.reactivespring.client;
 import com.reactivespring.domain.Review;
 import com.reactivespring.exception.ReviewsClientException;
 import com.reactivespring.exception.ReviewsServerException;
-import com.reactivespring.util.RetryUtil;
+import com.reactivespring.resilience.DownstreamResilience;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.util.UriComponentsBuilder;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
 
 @Component
 @Slf4j
 public class ReviewsRestClient {
 
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     private WebClient webClient;
+    private DownstreamResilience reviewsResilience;
+    private RequestCoalescer<String, List<Review>> requestCoalescer;
+    private ValidatorCache<List<Review>> validatorCache;
 
     @Value("${restClient.reviewsUrl}")
     private String reviewsUrl;
 
-    public ReviewsRestClient(WebClient webClient) {
+    public ReviewsRestClient(@Qualifier("reviewsWebClient") WebClient webClient,
+                             @Qualifier("reviewsResilience") DownstreamResilience reviewsResilience,
+                             MeterRegistry meterRegistry,
+                             @Value("${restClient.validators.enabled:true}") boolean validatorsEnabled,
+                             @Value("${restClient.validators.maximumSize:10000}") long validatorsMaximumSize,
+                             @Value("${movies.deadline.max:30s}") Duration sharedBudget) {
         this.webClient = webClient;
+        this.reviewsResilience = reviewsResilience;
+        this.requestCoalescer = new RequestCoalescer<>("reviews", sharedBudget, meterRegistry);
+        this.validatorCache = new ValidatorCache<>("reviews", validatorsEnabled, validatorsMaximumSize, meterRegistry);
     }
 
     public Flux<Review> retrieveReviews(String movieId) {
+
+        // the review list is shared as a whole, so callers joining late still see every review
+        return requestCoalescer.execute(movieId, () -> reviewsResilience.hedge(() -> fetchReviews(movieId).collectList()))
+                .flatMapIterable(reviews -> reviews);
+    }
+
+    /**
+     * Streams reviews as NDJSON so they flow through with backpressure instead of being
+     * buffered, which is why this path skips coalescing and hedging.
+     */
+    public Flux<Review> streamReviews(String movieId) {
         var uri = UriComponentsBuilder.fromUri(URI.create(reviewsUrl))
-                .queryParam("movieInfoId", movieId)
-                .build()
-                .toUri();
+                .queryParam("movieInfoId", movieId);
+
+        return streamReviewPages(uri)
+                .transform(call -> reviewsResilience.decorateStream(call));
+    }
+
+    private Flux<Review> streamReviewPages(UriComponentsBuilder uri) {
 
         return webClient.get()
-                .uri(uri)
+                .uri(uri.build().toUri())
+                .accept(MediaType.APPLICATION_NDJSON)
                 .retrieve()
-                .onStatus(HttpStatus::is4xxClientError, clientResponse -> {
-                    log.info("Status code is: {}", clientResponse.statusCode().value());
-                    if (clientResponse.statusCode().equals(HttpStatus.NOT_FOUND)) {
-                        return Mono.empty();
+                .onStatus(HttpStatus::is4xxClientError, this::handleClientError)
+                .onStatus(HttpStatus::is5xxServerError, this::handleServerError)
+                .toEntityFlux(Review.class)
+                .flatMapMany(page -> {
+                    var reviews = page.getBody() == null ? Flux.<Review>empty() : page.getBody();
+                    var cursor = page.getHeaders().getFirst(NEXT_CURSOR_HEADER);
+                    if (cursor == null) {
+                        return reviews;
                     }
+                    return reviews.concatWith(Flux.defer(() -> streamReviewPages(uri.cloneBuilder()
+                            .replaceQueryParam("cursor", cursor))));
+                });
+    }
 
-                    return clientResponse.bodyToMono(String.class)
-                            .flatMap(responseMessage -> Mono.error(new ReviewsClientException(responseMessage)));
-                })
-                .onStatus(HttpStatus::is5xxServerError, clientResponse -> {
-                    log.info("Status code is: {}", clientResponse.statusCode().value());
-                    return clientResponse.bodyToMono(String.class)
-                            .flatMap(responseMessage -> Mono.error(new ReviewsServerException(
-                                    "Server exception in ReviewsService " + responseMessage)));
-                })
-                .bodyToFlux(Review.class)
-                .retryWhen(RetryUtil.getRetrySpec())
+    private Flux<Review> fetchReviews(String movieId) {
+        var uri = UriComponentsBuilder.fromUri(URI.create(reviewsUrl))
+                .queryParam("movieInfoId", movieId);
+
+        return fetchAllReviewPages(uri)
                 .log();
     }
+
+    public Flux<Review> retrieveReviews(List<String> movieIds) {
+
+        return retrieveReviews(movieIds, null);
+    }
+
+    /**
+     * With {@code fields} the reviews only carry those fields, see {@code GET /v1/reviews?fields=}.
+     */
+    public Flux<Review> retrieveReviews(List<String> movieIds, String fields) {
+
+        // reviews are keyed by a numeric movieInfoId, other ids can never have any
+        var movieInfoIds = movieIds.stream()
+                .filter(movieId -> movieId.chars().allMatch(Character::isDigit))
+                .collect(Collectors.toList());
+        if (movieInfoIds.isEmpty()) {
+            return Flux.empty();
+        }
+
+        var uri = UriComponentsBuilder.fromUri(URI.create(reviewsUrl))
+                .queryParam("movieInfoIds", String.join(",", movieInfoIds));
+        if (fields != null) {
+            uri.queryParam("fields", fields);
+        }
+
+        return fetchAllReviewPages(uri);
+    }
+
+    /**
+     * The reviews service returns bounded pages and points to the next one with a cursor header,
+     * each page is fetched as its own resilient call that revalidates the last copy of the page.
+     */
+    private Flux<Review> fetchAllReviewPages(UriComponentsBuilder uri) {
+
+        return fetchReviewPage(uri.build().toUri())
+                .expand(page -> {
+                    var cursor = page.getHeaders().getFirst(NEXT_CURSOR_HEADER);
+                    return cursor == null
+                            ? Mono.empty()
+                            : fetchReviewPage(uri.cloneBuilder().replaceQueryParam("cursor", cursor).build().toUri());
+                })
+                .flatMapIterable(page -> page.getBody() == null ? List.<Review>of() : page.getBody());
+    }
+
+    private Mono<ResponseEntity<List<Review>>> fetchReviewPage(URI uri) {
+
+        return validatorCache.exchange(uri, eTag -> webClient.get()
+                        .uri(uri)
+                        .headers(headers -> {
+                            if (eTag != null) {
+                                headers.setIfNoneMatch(eTag);
+                            }
+                        })
+                        .retrieve()
+                        .onStatus(HttpStatus::is4xxClientError, this::handleClientError)
+                        .onStatus(HttpStatus::is5xxServerError, this::handleServerError)
+                        .toEntityList(Review.class))
+                .transform(call -> reviewsResilience.decorate(call));
+    }
+
+    private Mono<? extends Throwable> handleClientError(ClientResponse clientResponse) {
+        log.info("Status code is: {}", clientResponse.statusCode().value());
+        if (clientResponse.statusCode().equals(HttpStatus.NOT_FOUND)) {
+            return Mono.empty();
+        }
+
+        return clientResponse.bodyToMono(String.class)
+                .flatMap(responseMessage -> Mono.error(new ReviewsClientException(responseMessage)));
+    }
+
+    private Mono<? extends Throwable> handleServerError(ClientResponse clientResponse) {
+        log.info("Status code is: {}", clientResponse.statusCode().value());
+        return clientResponse.bodyToMono(String.class)
+                .flatMap(responseMessage -> Mono.error(new ReviewsServerException(
+                        "Server exception in ReviewsService " + responseMessage)));
+    }
 }
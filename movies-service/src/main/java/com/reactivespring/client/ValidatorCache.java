@@ -0,0 +1,73 @@
+package com.reactivespring.client;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.util.function.Function;
+
+/**
+ * Keeps the last response of each URL that came with an ETag and revalidates it with
+ * {@code If-None-Match}: a 304 answers with the kept response, so an unchanged resource costs a
+ * header-only round trip. Every call still goes downstream, a kept response is never served
+ * without the downstream confirming it.
+ */
+public class ValidatorCache<T> {
+
+    private final boolean enabled;
+    private final Cache<URI, ResponseEntity<T>> responses;
+    private final Counter notModifiedCounter;
+    private final Counter modifiedCounter;
+
+    public ValidatorCache(String downstream, boolean enabled, long maximumSize, MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.responses = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .build();
+        this.notModifiedCounter = Counter.builder("movies.client.revalidations")
+                .description("Kept responses revalidated with the downstream")
+                .tag("downstream", downstream)
+                .tag("result", "notModified")
+                .register(meterRegistry);
+        this.modifiedCounter = Counter.builder("movies.client.revalidations")
+                .description("Kept responses revalidated with the downstream")
+                .tag("downstream", downstream)
+                .tag("result", "modified")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Makes the {@code call}, which gets the ETag to send as {@code If-None-Match}, or null.
+     */
+    public Mono<ResponseEntity<T>> exchange(URI uri, Function<String, Mono<ResponseEntity<T>>> call) {
+
+        if (!enabled) {
+            return call.apply(null);
+        }
+        return Mono.defer(() -> {
+            var kept = responses.getIfPresent(uri);
+            var eTag = kept == null ? null : kept.getHeaders().getETag();
+            return call.apply(eTag)
+                    .map(response -> {
+                        if (kept != null && response.getStatusCode() == HttpStatus.NOT_MODIFIED) {
+                            notModifiedCounter.increment();
+                            return kept;
+                        }
+                        if (kept != null) {
+                            modifiedCounter.increment();
+                        }
+                        if (response.getHeaders().getETag() == null) {
+                            responses.invalidate(uri);
+                        } else {
+                            responses.put(uri, response);
+                        }
+                        return response;
+                    });
+        });
+    }
+}
@@ -0,0 +1,94 @@
+package com.reactivespring.config;
+
+import com.reactivespring.exception.DeadlineExceededException;
+import com.reactivespring.exception.MoviesInfoClientException;
+import com.reactivespring.exception.ReviewsClientException;
+import com.reactivespring.resilience.DownstreamResilience;
+import com.reactivespring.resilience.HedgingPolicy;
+import com.reactivespring.resilience.ResilienceProperties;
+import com.reactivespring.resilience.RetryBudget;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.micrometer.tagged.TaggedBulkheadMetrics;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@EnableConfigurationProperties(ResilienceProperties.class)
+public class ResilienceConfig {
+
+    @Bean
+    public CircuitBreakerRegistry circuitBreakerRegistry(MeterRegistry meterRegistry) {
+        var circuitBreakerRegistry = CircuitBreakerRegistry.ofDefaults();
+        TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(circuitBreakerRegistry).bindTo(meterRegistry);
+        return circuitBreakerRegistry;
+    }
+
+    @Bean
+    public BulkheadRegistry bulkheadRegistry(MeterRegistry meterRegistry) {
+        var bulkheadRegistry = BulkheadRegistry.ofDefaults();
+        TaggedBulkheadMetrics.ofBulkheadRegistry(bulkheadRegistry).bindTo(meterRegistry);
+        return bulkheadRegistry;
+    }
+
+    @Bean
+    public DownstreamResilience moviesInfoResilience(ResilienceProperties resilienceProperties,
+                                                     CircuitBreakerRegistry circuitBreakerRegistry,
+                                                     BulkheadRegistry bulkheadRegistry,
+                                                     MeterRegistry meterRegistry) {
+        return downstreamResilience("moviesInfo", resilienceProperties.getMoviesInfo(),
+                circuitBreakerRegistry, bulkheadRegistry, meterRegistry);
+    }
+
+    @Bean
+    public DownstreamResilience reviewsResilience(ResilienceProperties resilienceProperties,
+                                                  CircuitBreakerRegistry circuitBreakerRegistry,
+                                                  BulkheadRegistry bulkheadRegistry,
+                                                  MeterRegistry meterRegistry) {
+        return downstreamResilience("reviews", resilienceProperties.getReviews(),
+                circuitBreakerRegistry, bulkheadRegistry, meterRegistry);
+    }
+
+    private DownstreamResilience downstreamResilience(String downstream, ResilienceProperties.Policy policy,
+                                                      CircuitBreakerRegistry circuitBreakerRegistry,
+                                                      BulkheadRegistry bulkheadRegistry,
+                                                      MeterRegistry meterRegistry) {
+
+        var circuitBreaker = circuitBreakerRegistry.circuitBreaker(downstream, CircuitBreakerConfig.custom()
+                .failureRateThreshold(policy.getFailureRateThreshold())
+                .slidingWindowSize(policy.getSlidingWindowSize())
+                .minimumNumberOfCalls(policy.getMinimumNumberOfCalls())
+                .waitDurationInOpenState(policy.getWaitDurationInOpenState())
+                .permittedNumberOfCallsInHalfOpenState(policy.getPermittedCallsInHalfOpenState())
+                // a 4xx means the downstream is healthy, only server and transport errors count;
+                // a passed deadline is the caller's budget running out, not a downstream fault
+                .ignoreExceptions(MoviesInfoClientException.class, ReviewsClientException.class,
+                        DeadlineExceededException.class)
+                .build());
+
+        var bulkhead = bulkheadRegistry.bulkhead(downstream, BulkheadConfig.custom()
+                .maxConcurrentCalls(policy.getMaxConcurrentCalls())
+                .maxWaitDuration(Duration.ZERO)
+                .build());
+        var rejectedCounter = Counter.builder("movies.client.bulkhead.rejected")
+                .description("Calls rejected because the downstream bulkhead was full")
+                .tag("downstream", downstream)
+                .register(meterRegistry);
+        bulkhead.getEventPublisher().onCallRejected(event -> rejectedCounter.increment());
+
+        var retryBudget = new RetryBudget(downstream, policy.getRetryBudgetRatio(),
+                policy.getMinRetriesPerSecond(), meterRegistry);
+
+        var hedgingPolicy = new HedgingPolicy(downstream, policy, meterRegistry);
+
+        return new DownstreamResilience(circuitBreaker, bulkhead, retryBudget, hedgingPolicy, policy);
+    }
+}
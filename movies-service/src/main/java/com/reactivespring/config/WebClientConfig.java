@@ -1,14 +1,97 @@
 package com.reactivespring.config;
 
+import com.reactivespring.deadline.DeadlineExchangeFilter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
 
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One WebClient per downstream, each with its own connection pool so a slow downstream
+ * cannot starve the other of connections.
+ */
 @Configuration
+@EnableConfigurationProperties(WebClientProperties.class)
 public class WebClientConfig {
 
+    private static final String ACQUIRE_START = WebClientConfig.class.getName() + ".acquireStart";
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider moviesInfoConnectionProvider(WebClientProperties webClientProperties) {
+        return connectionProvider("moviesInfo", webClientProperties.getMoviesInfo());
+    }
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider reviewsConnectionProvider(WebClientProperties webClientProperties) {
+        return connectionProvider("reviews", webClientProperties.getReviews());
+    }
+
     @Bean
-    public WebClient webClient(WebClient.Builder builder){
-        return builder.build();
+    public WebClient moviesInfoWebClient(WebClient.Builder builder,
+                                         @Qualifier("moviesInfoConnectionProvider") ConnectionProvider connectionProvider,
+                                         WebClientProperties webClientProperties,
+                                         MeterRegistry meterRegistry) {
+        return webClient(builder, "moviesInfo", connectionProvider, webClientProperties.getMoviesInfo(), meterRegistry);
+    }
+
+    @Bean
+    public WebClient reviewsWebClient(WebClient.Builder builder,
+                                      @Qualifier("reviewsConnectionProvider") ConnectionProvider connectionProvider,
+                                      WebClientProperties webClientProperties,
+                                      MeterRegistry meterRegistry) {
+        return webClient(builder, "reviews", connectionProvider, webClientProperties.getReviews(), meterRegistry);
+    }
+
+    private ConnectionProvider connectionProvider(String downstream, WebClientProperties.Pool pool) {
+
+        // metrics(true) publishes reactor.netty.connection.provider.* gauges tagged with the pool name
+        return ConnectionProvider.builder(downstream)
+                .maxConnections(pool.getMaxConnections())
+                .pendingAcquireMaxCount(pool.getPendingAcquireMaxCount())
+                .pendingAcquireTimeout(pool.getPendingAcquireTimeout())
+                .maxIdleTime(pool.getMaxIdleTime())
+                .maxLifeTime(pool.getMaxLifeTime())
+                .evictInBackground(pool.getEvictInBackground())
+                .metrics(true)
+                .build();
+    }
+
+    private WebClient webClient(WebClient.Builder builder, String downstream, ConnectionProvider connectionProvider,
+                                WebClientProperties.Pool pool, MeterRegistry meterRegistry) {
+
+        var acquireTimer = Timer.builder("movies.client.pool.acquire")
+                .description("Time from issuing a request until a pooled connection carries it")
+                .tag("downstream", downstream)
+                .register(meterRegistry);
+
+        var httpClient = HttpClient.create(connectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) pool.getConnectTimeout().toMillis())
+                .option(ChannelOption.SO_KEEPALIVE, pool.isKeepAlive())
+                .keepAlive(pool.isKeepAlive())
+                .responseTimeout(pool.getResponseTimeout())
+                .doOnRequest((request, connection) -> request.currentContextView()
+                        .<Long>getOrEmpty(ACQUIRE_START)
+                        .ifPresent(start -> acquireTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS)));
+
+        return builder.clone()
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .filter(new DeadlineExchangeFilter())
+                .filter(acquireStartFilter())
+                .build();
+    }
+
+    private ExchangeFilterFunction acquireStartFilter() {
+        return (request, next) -> next.exchange(request)
+                .contextWrite(context -> context.put(ACQUIRE_START, System.nanoTime()));
     }
 }
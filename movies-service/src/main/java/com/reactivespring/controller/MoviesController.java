@@ -1,34 +1,175 @@
 package com.reactivespring.controller;
 
+import com.reactivespring.cache.MovieInfoCache;
 import com.reactivespring.client.MoviesInfoRestClient;
 import com.reactivespring.client.ReviewsRestClient;
 import com.reactivespring.domain.Movie;
+import com.reactivespring.domain.MovieStreamEvent;
+import com.reactivespring.domain.MovieView;
+import com.reactivespring.domain.MoviesBatchResponse;
+import com.reactivespring.domain.Review;
+import com.reactivespring.exception.MoviesRequestException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
 @RestController
+@Slf4j
 @RequestMapping("/v1/movies")
 public class MoviesController {
 
     private MoviesInfoRestClient moviesInfoRestClient;
+    private MovieInfoCache movieInfoCache;
     private ReviewsRestClient reviewsRestClient;
 
-    public MoviesController(MoviesInfoRestClient moviesInfoRestClient, ReviewsRestClient reviewsRestClient) {
+    @Value("${movies.batch.maxIds:100}")
+    private int batchMaxIds;
+
+    @Value("${movies.batch.size:25}")
+    private int batchSize;
+
+    @Value("${movies.batch.concurrency:4}")
+    private int batchConcurrency;
+
+    @Value("${movies.partialResponse.enabled:false}")
+    private boolean partialResponseEnabled;
+
+    @Value("${movies.partialResponse.reviewsBudget:500ms}")
+    private Duration reviewsBudget;
+
+    public MoviesController(MoviesInfoRestClient moviesInfoRestClient, MovieInfoCache movieInfoCache,
+                            ReviewsRestClient reviewsRestClient) {
         this.moviesInfoRestClient = moviesInfoRestClient;
+        this.movieInfoCache = movieInfoCache;
         this.reviewsRestClient = reviewsRestClient;
     }
 
     @GetMapping("/{id}")
     private Mono<Movie> getMovieById(@PathVariable("id") String movieId) {
 
-        return moviesInfoRestClient.retrieveMovieInfo(movieId)
-                .flatMap(movieInfo -> {
-                    var reviewsListMono = reviewsRestClient.retrieveReviews(movieId)
-                            .collectList();
-                    return reviewsListMono.map(reviews -> new Movie(movieInfo, reviews));
+        var movieInfoMono = movieInfoCache.retrieveMovieInfo(movieId);
+        var reviewsListMono = withinReviewsBudget(reviewsRestClient.retrieveReviews(movieId)
+                .collectList(), movieId);
+
+        // both calls are subscribed together, so latency is the slower hop rather than the sum
+        return Mono.zip(movieInfoMono, reviewsListMono)
+                .map(tuple -> tuple.getT2()
+                        .map(reviews -> new Movie(tuple.getT1(), reviews))
+                        .orElseGet(() -> new Movie(tuple.getT1(), List.of(), false)));
+    }
+
+    @GetMapping(value = "/{id}/stream", produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.TEXT_EVENT_STREAM_VALUE})
+    public Flux<MovieStreamEvent> streamMovieById(@PathVariable("id") String movieId) {
+
+        // MovieInfo goes out first, then reviews are relayed one by one as the reviews service sends them
+        return movieInfoCache.retrieveMovieInfo(movieId)
+                .flatMapMany(movieInfo -> Flux.concat(
+                        Mono.just(MovieStreamEvent.of(movieInfo)),
+                        reviewsRestClient.streamReviews(movieId).map(MovieStreamEvent::of)));
+    }
+
+    @GetMapping
+    public Mono<MoviesBatchResponse> getMoviesByIds(@RequestParam("ids") List<String> movieIds,
+                                                    @RequestParam(value = "view", required = false) String view) {
+
+        return retrieveMovies(movieIds, view);
+    }
+
+    @PostMapping("/lookup")
+    public Mono<MoviesBatchResponse> lookupMovies(@RequestBody List<String> movieIds,
+                                                  @RequestParam(value = "view", required = false) String view) {
+
+        return retrieveMovies(movieIds, view);
+    }
+
+    private Mono<MoviesBatchResponse> retrieveMovies(List<String> movieIds, String view) {
+
+        var distinctIds = movieIds.stream()
+                .map(String::trim)
+                .filter(movieId -> !movieId.isEmpty())
+                .distinct()
+                .collect(Collectors.toList());
+        if (distinctIds.isEmpty() || distinctIds.size() > batchMaxIds) {
+            return Mono.error(new MoviesRequestException(
+                    "Between 1 and " + batchMaxIds + " movie ids must be passed, got " + distinctIds.size()));
+        }
+        MovieView movieView;
+        try {
+            movieView = view == null ? MovieView.FULL : MovieView.valueOf(view.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return Mono.error(new MoviesRequestException(
+                    "view must be one of " + Arrays.toString(MovieView.values()) + ", got " + view));
+        }
+
+        return Flux.fromIterable(distinctIds)
+                .buffer(batchSize)
+                .flatMap(batch -> retrieveMovieBatch(batch, movieView), batchConcurrency)
+                .collectMap(movie -> movie.getMovieInfo().getMovieInfoId())
+                .map(moviesById -> {
+                    var movies = distinctIds.stream()
+                            .filter(moviesById::containsKey)
+                            .map(moviesById::get)
+                            .collect(Collectors.toList());
+                    var notFound = distinctIds.stream()
+                            .filter(movieId -> !moviesById.containsKey(movieId))
+                            .collect(Collectors.toList());
+                    return new MoviesBatchResponse(movies, notFound);
+                });
+    }
+
+    /**
+     * Resolves one chunk of ids with a single multi-id call to each downstream service.
+     */
+    private Flux<Movie> retrieveMovieBatch(List<String> movieIds, MovieView movieView) {
+
+        var movieInfosMono = moviesInfoRestClient.retrieveMovieInfos(movieIds, movieView.getMovieInfoFields())
+                .collectList();
+        var reviewsMono = withinReviewsBudget(reviewsRestClient.retrieveReviews(movieIds, movieView.getReviewFields())
+                .collectMultimap(review -> String.valueOf(review.getMovieInfoId())), movieIds);
+
+        return Mono.zip(movieInfosMono, reviewsMono)
+                .flatMapMany(tuple -> {
+                    Optional<Map<String, Collection<Review>>> reviewsByMovieId = tuple.getT2();
+                    return Flux.fromIterable(tuple.getT1())
+                            .map(movieInfo -> reviewsByMovieId
+                                    .map(reviews -> new Movie(movieInfo, List.copyOf(
+                                            reviews.getOrDefault(movieInfo.getMovieInfoId(), List.of()))))
+                                    .orElseGet(() -> new Movie(movieInfo, List.of(), false)));
+                });
+    }
+
+    /**
+     * In partial response mode, reviews that are slower than the budget or failing resolve to an empty
+     * Optional, so the caller can still answer with the MovieInfo and reviewsAvailable=false.
+     */
+    private <T> Mono<Optional<T>> withinReviewsBudget(Mono<T> reviewsMono, Object movieIds) {
+
+        if (!partialResponseEnabled) {
+            return reviewsMono.map(Optional::of);
+        }
+        return reviewsMono.map(Optional::of)
+                .timeout(reviewsBudget)
+                .onErrorResume(ex -> {
+                    log.warn("Reviews unavailable for {}, returning partial response : {}", movieIds, ex.toString());
+                    return Mono.just(Optional.empty());
                 });
     }
 
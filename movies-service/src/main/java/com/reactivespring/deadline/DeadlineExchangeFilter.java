@@ -0,0 +1,42 @@
+package com.reactivespring.deadline;
+
+import com.reactivespring.exception.DeadlineExceededException;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+
+/**
+ * Sends the remaining request budget downstream and stops waiting for the downstream once the
+ * deadline has passed. Calls made after the deadline are not sent at all. A 504 answering a call
+ * that carried the budget is the downstream giving up on that budget, so it fails with a
+ * {@link DeadlineExceededException} too rather than as a downstream fault.
+ */
+public class DeadlineExchangeFilter implements ExchangeFilterFunction {
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+
+        return Mono.deferContextual(context -> RequestDeadline.from(context)
+                .map(deadline -> {
+                    if (deadline.isExpired()) {
+                        return Mono.<ClientResponse>error(new DeadlineExceededException(
+                                "Request deadline passed before calling " + request.url()));
+                    }
+                    var remaining = deadline.remaining();
+                    var deadlineRequest = ClientRequest.from(request)
+                            .header(RequestDeadline.HEADER, String.valueOf(remaining.toMillis()))
+                            .build();
+                    return next.exchange(deadlineRequest)
+                            .flatMap(response -> response.statusCode() == HttpStatus.GATEWAY_TIMEOUT
+                                    ? response.releaseBody().then(Mono.<ClientResponse>error(new DeadlineExceededException(
+                                            "Request deadline passed in the downstream of " + request.url())))
+                                    : Mono.just(response))
+                            .timeout(remaining, Mono.error(() -> new DeadlineExceededException(
+                                    "Request deadline passed while calling " + request.url())));
+                })
+                .orElseGet(() -> next.exchange(request)));
+    }
+}
@@ -0,0 +1,63 @@
+package com.reactivespring.deadline;
+
+import com.reactivespring.exception.DeadlineExceededException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+/**
+ * Starts the request deadline from the caller's {@link RequestDeadline#HEADER} or the configured
+ * default, stores it in the Reactor context and cancels the request once it has passed.
+ * Streaming responses have no end to bound and are left alone.
+ */
+@Component
+@Slf4j
+public class DeadlineWebFilter implements WebFilter {
+
+    @Value("${movies.deadline.default:5s}")
+    private Duration defaultBudget;
+
+    @Value("${movies.deadline.max:30s}")
+    private Duration maxBudget;
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+
+        var accept = exchange.getRequest().getHeaders().getAccept();
+        if (accept.contains(MediaType.APPLICATION_NDJSON) || accept.contains(MediaType.TEXT_EVENT_STREAM)) {
+            return chain.filter(exchange);
+        }
+
+        var budget = budget(exchange.getRequest().getHeaders().getFirst(RequestDeadline.HEADER));
+        if (budget.isZero() || budget.isNegative()) {
+            return Mono.error(new DeadlineExceededException("Request deadline already passed"));
+        }
+        var deadline = RequestDeadline.after(budget);
+
+        return chain.filter(exchange)
+                .timeout(budget, Mono.error(() -> new DeadlineExceededException(
+                        "Request deadline of " + budget.toMillis() + "ms exceeded")))
+                .contextWrite(deadline::put);
+    }
+
+    private Duration budget(String header) {
+
+        if (header == null) {
+            return defaultBudget;
+        }
+        try {
+            var budget = Duration.ofMillis(Long.parseLong(header.trim()));
+            return budget.compareTo(maxBudget) > 0 ? maxBudget : budget;
+        } catch (NumberFormatException e) {
+            log.info("Ignoring invalid {} header : {}", RequestDeadline.HEADER, header);
+            return defaultBudget;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.reactivespring.deadline;
+
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Point in time after which nobody is waiting for the answer to the current request any more.
+ * It travels in the Reactor context and is handed to the movie info and review services as the
+ * remaining budget in the {@link #HEADER} header, where it bounds their Mongo queries.
+ */
+public class RequestDeadline {
+
+    public static final String HEADER = "X-Request-Timeout-Ms";
+    static final String CONTEXT_KEY = RequestDeadline.class.getName();
+
+    private final long deadlineNanos;
+
+    private RequestDeadline(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    public static RequestDeadline after(Duration budget) {
+        return new RequestDeadline(System.nanoTime() + budget.toNanos());
+    }
+
+    public static Optional<RequestDeadline> from(ContextView context) {
+        return context.getOrEmpty(CONTEXT_KEY);
+    }
+
+    public Context put(Context context) {
+        return context.put(CONTEXT_KEY, this);
+    }
+
+    /**
+     * The context for work shared by several requests. The deadline of the request that starts it
+     * would fail the others early, so it is replaced by one {@code budget} from now.
+     */
+    public static Context share(ContextView context, Duration budget) {
+        return from(context).isPresent() ? after(budget).put(Context.of(context)) : Context.of(context);
+    }
+
+    public Duration remaining() {
+        return Duration.ofNanos(Math.max(0, deadlineNanos - System.nanoTime()));
+    }
+
+    public boolean isExpired() {
+        return deadlineNanos - System.nanoTime() <= 0;
+    }
+}
@@ -0,0 +1,28 @@
+package com.reactivespring.domain;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One line of the streamed movie aggregate: the first event carries the MovieInfo,
+ * every following event carries a single Review.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class MovieStreamEvent {
+
+    private MovieInfo movieInfo;
+    private Review review;
+
+    public static MovieStreamEvent of(MovieInfo movieInfo) {
+        return new MovieStreamEvent(movieInfo, null);
+    }
+
+    public static MovieStreamEvent of(Review review) {
+        return new MovieStreamEvent(null, review);
+    }
+}
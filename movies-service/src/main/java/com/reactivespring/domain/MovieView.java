@@ -0,0 +1,33 @@
+package com.reactivespring.domain;
+
+/**
+ * How much of each movie a batch lookup returns. A {@code SUMMARY} only carries the movie name
+ * and year and the review ratings, so the downstream services are asked for just those fields.
+ */
+public enum MovieView {
+
+    FULL(null, null),
+    SUMMARY("name,year", "movieInfoId,rating");
+
+    private final String movieInfoFields;
+    private final String reviewFields;
+
+    MovieView(String movieInfoFields, String reviewFields) {
+        this.movieInfoFields = movieInfoFields;
+        this.reviewFields = reviewFields;
+    }
+
+    /**
+     * The {@code fields=} to ask the movie info service for, {@code null} for whole movie infos.
+     */
+    public String getMovieInfoFields() {
+        return movieInfoFields;
+    }
+
+    /**
+     * The {@code fields=} to ask the reviews service for, {@code null} for whole reviews.
+     */
+    public String getReviewFields() {
+        return reviewFields;
+    }
+}
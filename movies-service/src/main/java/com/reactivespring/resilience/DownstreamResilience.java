@@ -0,0 +1,77 @@
+package com.reactivespring.resilience;
+
+import com.reactivespring.util.RetryUtil;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.reactor.bulkhead.operator.BulkheadOperator;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.util.function.Supplier;
+
+/**
+ * Resilience policy applied to every call to one downstream service. Each attempt goes through
+ * the bulkhead and the circuit breaker, and failed attempts are retried only while the retry
+ * budget allows it.
+ */
+public class DownstreamResilience {
+
+    private CircuitBreaker circuitBreaker;
+    private Bulkhead bulkhead;
+    private RetryBudget retryBudget;
+    private Retry retrySpec;
+    private HedgingPolicy hedgingPolicy;
+
+    public DownstreamResilience(CircuitBreaker circuitBreaker, Bulkhead bulkhead, RetryBudget retryBudget,
+                                HedgingPolicy hedgingPolicy, ResilienceProperties.Policy policy) {
+        this.circuitBreaker = circuitBreaker;
+        this.bulkhead = bulkhead;
+        this.retryBudget = retryBudget;
+        this.hedgingPolicy = hedgingPolicy;
+        this.retrySpec = RetryUtil.getRetrySpec(policy.getMaxRetries(), policy.getRetryBackoff(), retryBudget);
+    }
+
+    public <T> Mono<T> decorate(Mono<T> call) {
+
+        return call
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreaker))
+                .transformDeferred(BulkheadOperator.of(bulkhead))
+                .doOnSuccess(value -> retryBudget.recordSuccess())
+                .retryWhen(retrySpec);
+    }
+
+    public <T> Flux<T> decorate(Flux<T> call) {
+
+        return call
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreaker))
+                .transformDeferred(BulkheadOperator.of(bulkhead))
+                .doOnComplete(retryBudget::recordSuccess)
+                .retryWhen(retrySpec);
+    }
+
+    /**
+     * Breaker and bulkhead only: a stream that already emitted elements cannot be retried
+     * without duplicating them.
+     */
+    public <T> Flux<T> decorateStream(Flux<T> call) {
+
+        return call
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreaker))
+                .transformDeferred(BulkheadOperator.of(bulkhead));
+    }
+
+    /**
+     * Opt-in hedging around a call that is already decorated, so every hedge attempt also goes
+     * through the breaker, bulkhead and retry budget.
+     */
+    public <T> Mono<T> hedge(Supplier<Mono<T>> call) {
+
+        return hedgingPolicy.hedge(call);
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+}
@@ -0,0 +1,107 @@
+package com.reactivespring.resilience;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+/**
+ * Hedged requests: when the first attempt has not answered after the observed latency percentile,
+ * an identical second attempt is sent and whichever signals first wins, cancelling the other.
+ * Hedges are drawn from a budget refilled by {@code maxHedgeRatio} per request, which bounds the
+ * extra load they can add.
+ */
+public class HedgingPolicy {
+
+    private static final int SAMPLE_SIZE = 256;
+    private static final int RECOMPUTE_EVERY = 32;
+
+    private final boolean enabled;
+    private final double percentile;
+    private final Duration minDelay;
+    private final double maxHedgeRatio;
+    private final Counter hedgesCounter;
+    private final Counter rejectedCounter;
+
+    private final long[] latencies = new long[SAMPLE_SIZE];
+    private int samples;
+    private long hedgeDelayNanos;
+    private double hedgeBalance;
+
+    public HedgingPolicy(String downstream, ResilienceProperties.Policy policy, MeterRegistry meterRegistry) {
+        this.enabled = policy.isHedgingEnabled();
+        this.percentile = policy.getHedgeDelayPercentile();
+        this.minDelay = policy.getHedgeMinDelay();
+        this.maxHedgeRatio = policy.getMaxHedgeRatio();
+        this.hedgeDelayNanos = policy.getHedgeInitialDelay().toNanos();
+        this.hedgesCounter = Counter.builder("movies.client.hedges")
+                .description("Hedge requests sent after the first attempt was slow")
+                .tag("downstream", downstream)
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("movies.client.hedges.rejected")
+                .description("Hedge requests skipped because the hedge budget was exhausted")
+                .tag("downstream", downstream)
+                .register(meterRegistry);
+        meterRegistry.gauge("movies.client.hedges.delay", Tags.of("downstream", downstream),
+                this, hedgingPolicy -> hedgingPolicy.hedgeDelay().toMillis());
+    }
+
+    public <T> Mono<T> hedge(Supplier<Mono<T>> call) {
+
+        if (!enabled) {
+            return call.get();
+        }
+        return Mono.defer(() -> {
+            recordRequest();
+            var hedgeMono = Mono.delay(hedgeDelay())
+                    .then(Mono.defer(() -> {
+                        if (!tryAcquire()) {
+                            return Mono.<T>never();
+                        }
+                        hedgesCounter.increment();
+                        // a failing hedge must not beat a first attempt that is still running
+                        return timed(call).onErrorResume(ex -> Mono.never());
+                    }));
+            return Mono.firstWithSignal(timed(call), hedgeMono);
+        });
+    }
+
+    private <T> Mono<T> timed(Supplier<Mono<T>> call) {
+
+        return Mono.defer(() -> {
+            var start = System.nanoTime();
+            return call.get().doOnSuccess(value -> recordLatency(System.nanoTime() - start));
+        });
+    }
+
+    synchronized Duration hedgeDelay() {
+        return Duration.ofNanos(Math.max(minDelay.toNanos(), hedgeDelayNanos));
+    }
+
+    private synchronized void recordRequest() {
+        hedgeBalance = Math.min(Math.max(1, maxHedgeRatio * 1000), hedgeBalance + maxHedgeRatio);
+    }
+
+    private synchronized boolean tryAcquire() {
+        if (hedgeBalance >= 1) {
+            hedgeBalance--;
+            return true;
+        }
+        rejectedCounter.increment();
+        return false;
+    }
+
+    private synchronized void recordLatency(long latencyNanos) {
+        latencies[samples % SAMPLE_SIZE] = latencyNanos;
+        samples++;
+        if (samples % RECOMPUTE_EVERY == 0) {
+            var window = Arrays.copyOf(latencies, Math.min(samples, SAMPLE_SIZE));
+            Arrays.sort(window);
+            hedgeDelayNanos = window[(int) Math.ceil(window.length * percentile) - 1];
+        }
+    }
+}
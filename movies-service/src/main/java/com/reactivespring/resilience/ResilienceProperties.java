@@ -0,0 +1,41 @@
+package com.reactivespring.resilience;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "rest-client.resilience")
+public class ResilienceProperties {
+
+    private Policy moviesInfo = new Policy();
+    private Policy reviews = new Policy();
+
+    @Data
+    public static class Policy {
+
+        //retry
+        private int maxRetries = 2;
+        private Duration retryBackoff = Duration.ofMillis(100);
+        private double retryBudgetRatio = 0.1;
+        private double minRetriesPerSecond = 5;
+
+        //circuit breaker
+        private float failureRateThreshold = 50;
+        private int slidingWindowSize = 50;
+        private int minimumNumberOfCalls = 20;
+        private Duration waitDurationInOpenState = Duration.ofSeconds(10);
+        private int permittedCallsInHalfOpenState = 5;
+
+        //bulkhead
+        private int maxConcurrentCalls = 100;
+
+        //hedging
+        private boolean hedgingEnabled = false;
+        private double hedgeDelayPercentile = 0.95;
+        private Duration hedgeInitialDelay = Duration.ofMillis(200);
+        private Duration hedgeMinDelay = Duration.ofMillis(10);
+        private double maxHedgeRatio = 0.05;
+    }
+}
@@ -0,0 +1,65 @@
+package com.reactivespring.resilience;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+
+/**
+ * Caps retries at a fraction of successful calls, so a struggling downstream is not hit with
+ * extra load. Every success deposits {@code ratio} of a retry into the budget, up to
+ * {@code maxBalance}, and a small per-second reserve keeps retries possible at low traffic.
+ */
+public class RetryBudget {
+
+    private final double ratio;
+    private final double minRetriesPerSecond;
+    private final double maxBalance;
+    private final Counter rejectedCounter;
+
+    private double balance;
+    private double reserve;
+    private long lastRefillNanos = System.nanoTime();
+
+    public RetryBudget(String downstream, double ratio, double minRetriesPerSecond, MeterRegistry meterRegistry) {
+        this.ratio = ratio;
+        this.minRetriesPerSecond = minRetriesPerSecond;
+        this.maxBalance = Math.max(1, ratio * 1000);
+        this.reserve = minRetriesPerSecond;
+        this.rejectedCounter = Counter.builder("movies.client.retries.rejected")
+                .description("Retries skipped because the retry budget was exhausted")
+                .tag("downstream", downstream)
+                .register(meterRegistry);
+        meterRegistry.gauge("movies.client.retries.budget", Tags.of("downstream", downstream),
+                this, RetryBudget::available);
+    }
+
+    public synchronized void recordSuccess() {
+        balance = Math.min(maxBalance, balance + ratio);
+    }
+
+    public synchronized boolean tryAcquire() {
+        refillReserve();
+        if (reserve >= 1) {
+            reserve--;
+            return true;
+        }
+        if (balance >= 1) {
+            balance--;
+            return true;
+        }
+        rejectedCounter.increment();
+        return false;
+    }
+
+    public synchronized double available() {
+        refillReserve();
+        return balance + reserve;
+    }
+
+    private void refillReserve() {
+        var now = System.nanoTime();
+        var elapsedSeconds = (now - lastRefillNanos) / 1_000_000_000.0;
+        reserve = Math.min(minRetriesPerSecond, reserve + elapsedSeconds * minRetriesPerSecond);
+        lastRefillNanos = now;
+    }
+}
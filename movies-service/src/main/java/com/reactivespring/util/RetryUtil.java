@@ -2,6 +2,7 @@ package com.reactivespring.util;
 
 import com.reactivespring.exception.MoviesInfoServerException;
 import com.reactivespring.exception.ReviewsServerException;
+import com.reactivespring.resilience.RetryBudget;
 import reactor.core.Exceptions;
 import reactor.util.retry.Retry;
 
@@ -9,11 +10,11 @@ import java.time.Duration;
 
 public class RetryUtil {
 
-    public static Retry getRetrySpec(){
+    public static Retry getRetrySpec(int maxRetries, Duration backoff, RetryBudget retryBudget){
 
-      return Retry.backoff(2, Duration.ofSeconds(1))
-              .filter(ex-> ex instanceof MoviesInfoServerException ||
-                      ex instanceof ReviewsServerException)
+      return Retry.backoff(maxRetries, backoff)
+              .filter(ex-> (ex instanceof MoviesInfoServerException ||
+                      ex instanceof ReviewsServerException) && retryBudget.tryAcquire())
               .onRetryExhaustedThrow(((retryBackoffSpec, retrySignal) ->
                       Exceptions.propagate(retrySignal.failure())));
     }
@@ -1,20 +1,34 @@
 package com.reactivespring;
 
 import com.github.tomakehurst.wiremock.client.WireMock;
+import com.reactivespring.deadline.RequestDeadline;
 import com.reactivespring.domain.Movie;
+import com.reactivespring.domain.MovieStreamEvent;
+import com.reactivespring.domain.MoviesBatchResponse;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.cloud.contract.wiremock.AutoConfigureWireMock;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.web.reactive.server.WebTestClient;
 
+import java.util.List;
 import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.*;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
 @ActiveProfiles("test")
@@ -31,6 +45,18 @@ public class MoviesControllerIntgTest {
     @Autowired
     WebTestClient webTestClient;
 
+    @Autowired
+    CircuitBreakerRegistry circuitBreakerRegistry;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        WireMock.resetAllRequests();
+        circuitBreakerRegistry.getAllCircuitBreakers().forEach(CircuitBreaker::reset);
+    }
+
     @Test
     void getMovieById() {
 
@@ -59,6 +85,86 @@ public class MoviesControllerIntgTest {
                     assertEquals("Batman Begins", movieResponse.getMovieInfo().getName());
                 });
 
+        // each downstream has its own instrumented pool
+        assertNotNull(meterRegistry.find("reactor.netty.connection.provider.total.connections")
+                .tag("name", "reviews").gauge());
+        assertTrue(meterRegistry.get("movies.client.pool.acquire").tag("downstream", "reviews").timer().count() > 0);
+    }
+
+    @Test
+    void getMovieById_reviewsRevalidated() {
+
+        var movieId = "1";
+
+        stubFor(get(urlPathEqualTo("/v1/movieinfos" + "/" + movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("movieinfo.json")));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withHeader("ETag", "\"5\"")
+                        .withBodyFile("reviews.json")));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .withHeader("If-None-Match", equalTo("\"5\""))
+                .willReturn(aResponse()
+                        .withStatus(304)
+                        .withHeader("ETag", "\"5\"")));
+
+        for (int i = 0; i < 2; i++) {
+            webTestClient.get()
+                    .uri("/v1/movies/{id}", movieId)
+                    .exchange()
+                    .expectStatus()
+                    .isOk()
+                    .expectBody(Movie.class)
+                    .consumeWith(movieEntityExchangeResult -> {
+                        var movieResponse = movieEntityExchangeResult.getResponseBody();
+                        assertEquals(2, Objects.requireNonNull(movieResponse).getReviewList().size());
+                    });
+        }
+
+        // the second answer was a bodiless 304
+        verify(1, getRequestedFor(urlPathEqualTo("/v1/reviews"))
+                .withHeader("If-None-Match", equalTo("\"5\"")));
+    }
+
+    @Test
+    void getMovieById_reviewsPaginated() {
+
+        var movieId = "1";
+
+        stubFor(get(urlPathEqualTo("/v1/movieinfos" + "/" + movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("movieinfo.json")));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withHeader("X-Next-Cursor", "page2")
+                        .withBodyFile("reviews.json")));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .withQueryParam("cursor", equalTo("page2"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("reviews.json")));
+
+        webTestClient.get()
+                .uri("/v1/movies/{id}", movieId)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(Movie.class)
+                .consumeWith(movieEntityExchangeResult -> {
+                    var movieResponse = movieEntityExchangeResult.getResponseBody();
+                    assertEquals(4, Objects.requireNonNull(movieResponse).getReviewList().size());
+                });
+
+        WireMock.verify(2, getRequestedFor(urlPathEqualTo("/v1/reviews")));
     }
 
     @Test
@@ -114,5 +220,224 @@ public class MoviesControllerIntgTest {
 
         WireMock.verify(3, getRequestedFor(urlPathMatching("/v1/reviews*")));
     }
-}
 
+    @Test
+    void getMovieById_reviews_circuitOpen() {
+
+        var movieId = "1";
+
+        stubFor(get(urlPathEqualTo("/v1/movieinfos" + "/" + movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("movieinfo.json")));
+
+        circuitBreakerRegistry.circuitBreaker("reviews").transitionToOpenState();
+
+        webTestClient.get()
+                .uri("/v1/movies/{id}", movieId)
+                .exchange()
+                .expectStatus()
+                .isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+
+        WireMock.verify(0, getRequestedFor(urlPathMatching("/v1/reviews*")));
+    }
+
+    @Test
+    void getMovieById_deadlinePropagated() {
+
+        var movieId = "2";
+
+        stubFor(get(urlPathEqualTo("/v1/movieinfos" + "/" + movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("movieinfo.json")));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("reviews.json")));
+
+        webTestClient.get()
+                .uri("/v1/movies/{id}", movieId)
+                .header(RequestDeadline.HEADER, "2000")
+                .exchange()
+                .expectStatus()
+                .isOk();
+
+        WireMock.verify(getRequestedFor(urlPathEqualTo("/v1/reviews"))
+                .withHeader(RequestDeadline.HEADER, matching("[0-9]+")));
+    }
+
+    @Test
+    void getMovieById_deadlineExceeded() {
+
+        var movieId = "1";
+
+        stubFor(get(urlPathEqualTo("/v1/movieinfos" + "/" + movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("movieinfo.json")));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("reviews.json")
+                        .withFixedDelay(2000)));
+
+        webTestClient.get()
+                .uri("/v1/movies/{id}", movieId)
+                .header(RequestDeadline.HEADER, "300")
+                .exchange()
+                .expectStatus()
+                .isEqualTo(HttpStatus.GATEWAY_TIMEOUT);
+
+        assertEquals(0, circuitBreakerRegistry.circuitBreaker("reviews").getMetrics().getNumberOfFailedCalls());
+    }
+
+    @Test
+    void getMovieById_downstreamDeadlineExceeded() {
+
+        var movieId = "1";
+
+        stubFor(get(urlPathEqualTo("/v1/movieinfos" + "/" + movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("movieinfo.json")));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .willReturn(aResponse()
+                        .withStatus(HttpStatus.GATEWAY_TIMEOUT.value())
+                        .withBody("Request deadline passed before querying reviews")));
+
+        webTestClient.get()
+                .uri("/v1/movies/{id}", movieId)
+                .header(RequestDeadline.HEADER, "2000")
+                .exchange()
+                .expectStatus()
+                .isEqualTo(HttpStatus.GATEWAY_TIMEOUT);
+
+        // neither retried nor counted against the breaker
+        WireMock.verify(1, getRequestedFor(urlPathEqualTo("/v1/reviews")));
+        assertEquals(0, circuitBreakerRegistry.circuitBreaker("reviews").getMetrics().getNumberOfFailedCalls());
+    }
+
+    @Test
+    void streamMovieById() {
+
+        var movieId = "1";
+
+        stubFor(get(urlPathEqualTo("/v1/movieinfos" + "/" + movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("movieinfo.json")));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .withHeader("Accept", equalTo(MediaType.APPLICATION_NDJSON_VALUE))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", MediaType.APPLICATION_NDJSON_VALUE)
+                        .withBodyFile("reviews.ndjson")));
+
+        webTestClient.get()
+                .uri("/v1/movies/{id}/stream", movieId)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBodyList(MovieStreamEvent.class)
+                .consumeWith(listEntityExchangeResult -> {
+                    var events = Objects.requireNonNull(listEntityExchangeResult.getResponseBody());
+                    assertEquals(3, events.size());
+                    assertEquals("Batman Begins", events.get(0).getMovieInfo().getName());
+                    assertEquals("Awesome Movie", events.get(1).getReview().getComment());
+                });
+    }
+
+    @Test
+    void getMoviesByIds() {
+
+        stubFor(get(urlPathEqualTo("/v1/movieinfos"))
+                .withQueryParam("ids", equalTo("1,2"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("movieinfos.json")));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .withQueryParam("movieInfoIds", equalTo("1,2"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("reviews.json")));
+
+        webTestClient.get()
+                .uri("/v1/movies?ids={ids}", "1,2")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(MoviesBatchResponse.class)
+                .consumeWith(batchEntityExchangeResult -> {
+                    var batchResponse = Objects.requireNonNull(batchEntityExchangeResult.getResponseBody());
+                    assertEquals(1, batchResponse.getMovies().size());
+                    assertEquals(2, batchResponse.getMovies().get(0).getReviewList().size());
+                    assertEquals(List.of("2"), batchResponse.getNotFound());
+                });
+
+        WireMock.verify(1, getRequestedFor(urlPathEqualTo("/v1/movieinfos")));
+        WireMock.verify(1, getRequestedFor(urlPathEqualTo("/v1/reviews")));
+    }
+
+    @Test
+    void getMoviesByIds_summaryView() {
+
+        stubFor(get(urlPathEqualTo("/v1/movieinfos"))
+                .withQueryParam("ids", equalTo("1"))
+                .withQueryParam("fields", equalTo("name,year"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBody("[{\"movieInfoId\":\"1\",\"name\":\"Batman Begins\",\"year\":2005}]")));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .withQueryParam("movieInfoIds", equalTo("1"))
+                .withQueryParam("fields", equalTo("movieInfoId,rating"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBody("[{\"reviewId\":\"1\",\"movieInfoId\":1,\"rating\":9.0}]")));
+
+        webTestClient.post()
+                .uri("/v1/movies/lookup?view=summary")
+                .bodyValue(List.of("1"))
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(MoviesBatchResponse.class)
+                .consumeWith(batchEntityExchangeResult -> {
+                    var batchResponse = Objects.requireNonNull(batchEntityExchangeResult.getResponseBody());
+                    var movie = batchResponse.getMovies().get(0);
+                    assertEquals("Batman Begins", movie.getMovieInfo().getName());
+                    assertEquals(9.0, movie.getReviewList().get(0).getRating());
+                });
+    }
+
+    @Test
+    void getMoviesByIds_unknownView() {
+
+        webTestClient.get()
+                .uri("/v1/movies?ids={ids}&view={view}", "1", "detailed")
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+    }
+
+    @Test
+    void lookupMovies_tooManyIds() {
+
+        var movieIds = IntStream.rangeClosed(1, 101)
+                .mapToObj(String::valueOf)
+                .collect(Collectors.toList());
+
+        webTestClient.post()
+                .uri("/v1/movies/lookup")
+                .bodyValue(movieIds)
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+    }
+}
@@ -0,0 +1,155 @@
+package com.reactivespring;
+
+import com.github.tomakehurst.wiremock.client.WireMock;
+import com.reactivespring.domain.Movie;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.contract.wiremock.AutoConfigureWireMock;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@AutoConfigureWebTestClient
+@AutoConfigureWireMock(port = 0)
+@TestPropertySource(
+        properties = {
+                "restClient.moviesInfoUrl = http://localhost:${wiremock.server.port}/v1/movieinfos",
+                "restClient.reviewsUrl = http://localhost:${wiremock.server.port}/v1/reviews",
+                "restClient.moviesInfoCache.enabled = false",
+                "movies.partialResponse.enabled = true",
+                "movies.partialResponse.reviewsBudget = 1000ms"
+        }
+)
+public class MoviesControllerPartialResponseIntgTest {
+
+    static int SAMPLES = 20;
+
+    @Autowired
+    WebTestClient webTestClient;
+
+    @BeforeEach
+    void setUp() {
+        WireMock.resetAllRequests();
+    }
+
+    @Test
+    void getMovieById_infoAndReviewsFetchedConcurrently() {
+
+        var movieId = "1";
+
+        stubFor(get(urlPathEqualTo("/v1/movieinfos" + "/" + movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("movieinfo.json")
+                        .withFixedDelay(400)));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("reviews.json")
+                        .withFixedDelay(400)));
+
+        var p99 = p99LatencyMillis(movieId, movie -> {
+            assertTrue(movie.isReviewsAvailable());
+            assertEquals(2, movie.getReviewList().size());
+        });
+
+        // sequential calls would take at least 400ms + 400ms
+        assertTrue(p99 < 800, "p99 was " + p99 + "ms");
+    }
+
+    @Test
+    void getMovieById_slowReviews_partialResponse() {
+
+        var movieId = "1";
+
+        stubFor(get(urlPathEqualTo("/v1/movieinfos" + "/" + movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("movieinfo.json")));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("reviews.json")
+                        .withFixedDelay(3000)));
+
+        var p99 = p99LatencyMillis(movieId, movie -> {
+            assertFalse(movie.isReviewsAvailable());
+            assertEquals(0, movie.getReviewList().size());
+            assertEquals("Batman Begins", movie.getMovieInfo().getName());
+        });
+
+        // without the budget every call would wait for the 3000ms reviews response
+        assertTrue(p99 < 2000, "p99 was " + p99 + "ms");
+    }
+
+    @Test
+    void getMovieById_reviews_5XX_partialResponse() {
+
+        var movieId = "1";
+
+        stubFor(get(urlPathEqualTo("/v1/movieinfos" + "/" + movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("movieinfo.json")));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .willReturn(aResponse()
+                        .withStatus(500)
+                        .withBody("service not available")));
+
+        webTestClient.get()
+                .uri("/v1/movies/{id}", movieId)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(Movie.class)
+                .consumeWith(movieEntityExchangeResult -> {
+                    var movieResponse = Objects.requireNonNull(movieEntityExchangeResult.getResponseBody());
+                    assertFalse(movieResponse.isReviewsAvailable());
+                    assertEquals("Batman Begins", movieResponse.getMovieInfo().getName());
+                });
+    }
+
+    private long p99LatencyMillis(String movieId, Consumer<Movie> assertions) {
+
+        // warm up connections before measuring
+        webTestClient.get()
+                .uri("/v1/movies/{id}", movieId)
+                .exchange()
+                .expectStatus()
+                .isOk();
+
+        var latencies = new ArrayList<Long>();
+        for (int i = 0; i < SAMPLES; i++) {
+            var start = System.nanoTime();
+            webTestClient.get()
+                    .uri("/v1/movies/{id}", movieId)
+                    .exchange()
+                    .expectStatus()
+                    .isOk()
+                    .expectBody(Movie.class)
+                    .consumeWith(movieEntityExchangeResult ->
+                            assertions.accept(Objects.requireNonNull(movieEntityExchangeResult.getResponseBody())));
+            latencies.add((System.nanoTime() - start) / 1_000_000);
+        }
+        Collections.sort(latencies);
+        return latencies.get((int) Math.ceil(SAMPLES * 0.99) - 1);
+    }
+}
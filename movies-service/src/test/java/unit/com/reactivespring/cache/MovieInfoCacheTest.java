@@ -0,0 +1,109 @@
+package com.reactivespring.cache;
+
+import com.reactivespring.client.MoviesInfoRestClient;
+import com.reactivespring.deadline.RequestDeadline;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.exception.DeadlineExceededException;
+import com.reactivespring.exception.MoviesInfoClientException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MovieInfoCacheTest {
+
+    MoviesInfoRestClient moviesInfoRestClient = mock(MoviesInfoRestClient.class);
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void retrieveMovieInfo_servedFromCache() {
+
+        var movieInfoCache = movieInfoCache(Duration.ofMinutes(1));
+        when(moviesInfoRestClient.retrieveMovieInfo("1")).thenReturn(Mono.just(movieInfo("Batman Begins")));
+
+        assertEquals("Batman Begins", movieInfoCache.retrieveMovieInfo("1").block().getName());
+        assertEquals("Batman Begins", movieInfoCache.retrieveMovieInfo("1").block().getName());
+
+        verify(moviesInfoRestClient, times(1)).retrieveMovieInfo("1");
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "movieInfo").tag("result", "hit")
+                .functionCounter().count());
+    }
+
+    @Test
+    void retrieveMovieInfo_notFoundIsCached() {
+
+        var movieInfoCache = movieInfoCache(Duration.ofMinutes(1));
+        when(moviesInfoRestClient.retrieveMovieInfo("2"))
+                .thenReturn(Mono.error(new MoviesInfoClientException("There is no MovieInfo for the passed ID: 2", 404)));
+
+        StepVerifier.create(movieInfoCache.retrieveMovieInfo("2"))
+                .expectError(MoviesInfoClientException.class)
+                .verify();
+        StepVerifier.create(movieInfoCache.retrieveMovieInfo("2"))
+                .expectError(MoviesInfoClientException.class)
+                .verify();
+
+        verify(moviesInfoRestClient, times(1)).retrieveMovieInfo("2");
+    }
+
+    @Test
+    void retrieveMovieInfo_staleWhileRevalidate() throws InterruptedException {
+
+        var movieInfoCache = movieInfoCache(Duration.ofMillis(50));
+        when(moviesInfoRestClient.retrieveMovieInfo("1"))
+                .thenReturn(Mono.just(movieInfo("Batman Begins")))
+                .thenReturn(Mono.just(movieInfo("Batman Begins Remastered")).delayElement(Duration.ofMillis(200)));
+
+        assertEquals("Batman Begins", movieInfoCache.retrieveMovieInfo("1").block().getName());
+        Thread.sleep(100);
+
+        // the stale entry is served right away while the refresh is still running
+        assertEquals("Batman Begins", movieInfoCache.retrieveMovieInfo("1").block(Duration.ofMillis(100)).getName());
+        Thread.sleep(300);
+        assertEquals("Batman Begins Remastered", movieInfoCache.retrieveMovieInfo("1").block().getName());
+    }
+
+    @Test
+    void retrieveMovieInfo_loadedWithinDeadline() {
+
+        var movieInfoCache = movieInfoCache(Duration.ofMinutes(1));
+        var budget = new AtomicReference<Duration>();
+        when(moviesInfoRestClient.retrieveMovieInfo("1")).thenReturn(Mono.deferContextual(context -> {
+            RequestDeadline.from(context).ifPresent(deadline -> budget.set(deadline.remaining()));
+            return Mono.just(movieInfo("Batman Begins")).delayElement(Duration.ofMillis(200));
+        }));
+
+        StepVerifier.create(movieInfoCache.retrieveMovieInfo("1")
+                        .contextWrite(RequestDeadline.after(Duration.ofMillis(50))::put))
+                .expectError(DeadlineExceededException.class)
+                .verify();
+        assertTrue(budget.get().compareTo(Duration.ofSeconds(1)) > 0);
+
+        // the load outlives the caller that started it
+        assertEquals("Batman Begins", movieInfoCache.retrieveMovieInfo("1")
+                .contextWrite(RequestDeadline.after(Duration.ofSeconds(5))::put)
+                .block().getName());
+        verify(moviesInfoRestClient, times(1)).retrieveMovieInfo("1");
+    }
+
+    private MovieInfoCache movieInfoCache(Duration refreshAfter) {
+        return new MovieInfoCache(moviesInfoRestClient, meterRegistry, true, 100,
+                Duration.ofMinutes(10), refreshAfter, Duration.ofSeconds(30), Duration.ofSeconds(30));
+    }
+
+    private MovieInfo movieInfo(String name) {
+        return new MovieInfo("1", name, 2005, List.of("Christian Bale"), LocalDate.parse("2005-06-15"));
+    }
+}
@@ -0,0 +1,113 @@
+package com.reactivespring.client;
+
+import com.reactivespring.deadline.RequestDeadline;
+import com.reactivespring.exception.DeadlineExceededException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RequestCoalescerTest {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    RequestCoalescer<String, String> requestCoalescer = new RequestCoalescer<>("test", Duration.ofSeconds(30), meterRegistry);
+
+    @Test
+    void execute_concurrentCallersShareOneCall() {
+
+        var subscriptions = new AtomicInteger();
+        var upstream = Sinks.<String>one();
+        var call = upstream.asMono().doOnSubscribe(subscription -> subscriptions.incrementAndGet());
+
+        var first = requestCoalescer.execute("1", () -> call).toFuture();
+        var second = requestCoalescer.execute("1", () -> call).toFuture();
+        upstream.tryEmitValue("movie");
+
+        assertEquals("movie", first.join());
+        assertEquals("movie", second.join());
+        assertEquals(1, subscriptions.get());
+        assertEquals(1.0, meterRegistry.get("movies.client.requests.coalesced").counter().count());
+    }
+
+    @Test
+    void execute_errorReachesEveryCaller() {
+
+        var upstream = Sinks.<String>one();
+
+        var first = requestCoalescer.execute("1", upstream::asMono);
+        var second = requestCoalescer.execute("1", upstream::asMono);
+
+        StepVerifier.create(Mono.zipDelayError(first, second))
+                .then(() -> upstream.tryEmitError(new IllegalStateException("boom")))
+                .verifyErrorSatisfies(ex -> {
+                    var errors = Exceptions.unwrapMultiple(ex);
+                    assertEquals(2, errors.size());
+                    errors.forEach(error -> assertEquals("boom", error.getMessage()));
+                });
+    }
+
+    @Test
+    void execute_upstreamCancelledOnlyWhenAllCallersLeave() {
+
+        var cancelled = new AtomicBoolean();
+        var call = Mono.<String>never().doOnCancel(() -> cancelled.set(true));
+
+        var first = requestCoalescer.execute("1", () -> call).subscribe();
+        var second = requestCoalescer.execute("1", () -> call).subscribe();
+
+        first.dispose();
+        assertFalse(cancelled.get());
+        second.dispose();
+        assertTrue(cancelled.get());
+    }
+
+    @Test
+    void execute_completedCallIsNotReused() {
+
+        var subscriptions = new AtomicInteger();
+        var call = Mono.fromSupplier(subscriptions::incrementAndGet);
+
+        assertEquals("1", requestCoalescer.execute("1", () -> call.map(String::valueOf)).block());
+        assertEquals("2", requestCoalescer.execute("1", () -> call.map(String::valueOf)).block());
+    }
+
+    @Test
+    void execute_eachCallerWaitsUntilItsOwnDeadline() {
+
+        var subscriptions = new AtomicInteger();
+        var budget = new AtomicReference<Duration>();
+        var upstream = Sinks.<String>one();
+        var call = Mono.deferContextual(context -> {
+            RequestDeadline.from(context).ifPresent(deadline -> budget.set(deadline.remaining()));
+            return upstream.asMono();
+        }).doOnSubscribe(subscription -> subscriptions.incrementAndGet());
+
+        var first = requestCoalescer.execute("1", () -> call)
+                .contextWrite(RequestDeadline.after(Duration.ofMillis(50))::put)
+                .toFuture();
+        var second = requestCoalescer.execute("1", () -> call)
+                .contextWrite(RequestDeadline.after(Duration.ofSeconds(5))::put)
+                .toFuture();
+
+        var error = assertThrows(CompletionException.class, first::join);
+        assertTrue(error.getCause() instanceof DeadlineExceededException);
+        upstream.tryEmitValue("movie");
+
+        assertEquals("movie", second.join());
+        assertEquals(1, subscriptions.get());
+        assertTrue(budget.get().compareTo(Duration.ofSeconds(5)) > 0);
+    }
+}
@@ -0,0 +1,75 @@
+package com.reactivespring.client;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ValidatorCacheTest {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    ValidatorCache<String> validatorCache = new ValidatorCache<>("test", true, 100, meterRegistry);
+    URI uri = URI.create("http://localhost/v1/movieinfos/1");
+
+    @Test
+    void exchange_notModifiedAnsweredWithKeptResponse() {
+
+        var sent = new ArrayList<String>();
+
+        validatorCache.exchange(uri, eTag -> {
+            sent.add(eTag);
+            return Mono.just(ResponseEntity.ok().eTag("1").body("Batman Begins"));
+        }).block();
+        var response = validatorCache.exchange(uri, eTag -> {
+            sent.add(eTag);
+            return Mono.just(ResponseEntity.status(HttpStatus.NOT_MODIFIED).<String>build());
+        }).block();
+
+        assertNull(sent.get(0));
+        assertEquals("\"1\"", sent.get(1));
+        assert response != null;
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("Batman Begins", response.getBody());
+        assertEquals(1.0, meterRegistry.get("movies.client.revalidations").tag("result", "notModified")
+                .counter().count());
+    }
+
+    @Test
+    void exchange_modifiedResponseReplacesKeptOne() {
+
+        validatorCache.exchange(uri, eTag -> Mono.just(ResponseEntity.ok().eTag("1").body("Batman Begins"))).block();
+        validatorCache.exchange(uri, eTag -> Mono.just(ResponseEntity.ok().eTag("2").body("The Dark Knight"))).block();
+
+        var sent = new ArrayList<String>();
+        var response = validatorCache.exchange(uri, eTag -> {
+            sent.add(eTag);
+            return Mono.just(ResponseEntity.status(HttpStatus.NOT_MODIFIED).<String>build());
+        }).block();
+
+        assertEquals("\"2\"", sent.get(0));
+        assert response != null;
+        assertEquals("The Dark Knight", response.getBody());
+    }
+
+    @Test
+    void exchange_responseWithoutETagNotKept() {
+
+        validatorCache.exchange(uri, eTag -> Mono.just(ResponseEntity.ok().eTag("1").body("Batman Begins"))).block();
+        validatorCache.exchange(uri, eTag -> Mono.just(ResponseEntity.ok("Batman Begins"))).block();
+
+        var sent = new ArrayList<String>();
+        validatorCache.exchange(uri, eTag -> {
+            sent.add(eTag);
+            return Mono.just(ResponseEntity.ok("Batman Begins"));
+        }).block();
+
+        assertNull(sent.get(0));
+    }
+}
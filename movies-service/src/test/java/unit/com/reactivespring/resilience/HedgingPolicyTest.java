@@ -0,0 +1,61 @@
+package com.reactivespring.resilience;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HedgingPolicyTest {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void hedge_slowFirstAttemptLosesToHedge() {
+
+        var hedgingPolicy = new HedgingPolicy("test", policy(1.0), meterRegistry);
+        var attempts = new AtomicInteger();
+        var slowCancelled = new AtomicBoolean();
+
+        var result = hedgingPolicy.hedge(() -> attempts.incrementAndGet() == 1
+                ? Mono.delay(Duration.ofSeconds(5)).thenReturn("slow").doOnCancel(() -> slowCancelled.set(true))
+                : Mono.just("fast"));
+
+        StepVerifier.create(result)
+                .expectNext("fast")
+                .expectComplete()
+                .verify(Duration.ofSeconds(1));
+        assertTrue(slowCancelled.get());
+        assertEquals(1.0, meterRegistry.get("movies.client.hedges").counter().count());
+    }
+
+    @Test
+    void hedge_budgetExhausted() {
+
+        var hedgingPolicy = new HedgingPolicy("test", policy(0.0), meterRegistry);
+        var attempts = new AtomicInteger();
+
+        var result = hedgingPolicy.hedge(() -> Mono.delay(Duration.ofMillis(200))
+                .thenReturn("attempt " + attempts.incrementAndGet()));
+
+        StepVerifier.create(result)
+                .expectNext("attempt 1")
+                .verifyComplete();
+        assertEquals(1, attempts.get());
+        assertEquals(1.0, meterRegistry.get("movies.client.hedges.rejected").counter().count());
+    }
+
+    private ResilienceProperties.Policy policy(double maxHedgeRatio) {
+        var policy = new ResilienceProperties.Policy();
+        policy.setHedgingEnabled(true);
+        policy.setHedgeInitialDelay(Duration.ofMillis(50));
+        policy.setMaxHedgeRatio(maxHedgeRatio);
+        return policy;
+    }
+}
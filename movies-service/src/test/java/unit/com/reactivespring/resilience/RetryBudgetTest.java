@@ -0,0 +1,38 @@
+package com.reactivespring.resilience;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RetryBudgetTest {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void tryAcquire_reserveAllowsRetriesWithoutTraffic() {
+
+        var retryBudget = new RetryBudget("test", 0.1, 2, meterRegistry);
+
+        assertTrue(retryBudget.tryAcquire());
+        assertTrue(retryBudget.tryAcquire());
+        assertFalse(retryBudget.tryAcquire());
+        assertEquals(1.0, meterRegistry.get("movies.client.retries.rejected").counter().count());
+    }
+
+    @Test
+    void tryAcquire_cappedAtFractionOfSuccesses() {
+
+        var retryBudget = new RetryBudget("test", 0.1, 0, meterRegistry);
+
+        for (int i = 0; i < 20; i++) {
+            retryBudget.recordSuccess();
+        }
+
+        assertTrue(retryBudget.tryAcquire());
+        assertTrue(retryBudget.tryAcquire());
+        assertFalse(retryBudget.tryAcquire());
+    }
+}
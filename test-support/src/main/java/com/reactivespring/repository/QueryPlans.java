@@ -0,0 +1,145 @@
+package com.reactivespring.repository;
+
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+/**
+ * Finds the queries no index serves. Import {@link CommandCapture} so the commands sent to Mongo
+ * are recorded, run the queries, then {@link #collectionScans} asks Mongo to explain each command
+ * sent for a collection and returns those with a collection scan that filters or sorts. A scan
+ * without either reads the whole collection on purpose and is fine.
+ */
+public final class QueryPlans {
+
+    static final Set<String> EXPLAINABLE = Set.of("find", "aggregate", "count", "distinct", "findAndModify", "update", "delete");
+    static final Set<String> NOT_EXPLAINED = Set.of("lsid", "txnNumber", "readConcern", "writeConcern", "maxTimeMS");
+    static final List<BsonDocument> COMMANDS = new CopyOnWriteArrayList<>();
+
+    private QueryPlans() {
+    }
+
+    @TestConfiguration
+    public static class CommandCapture {
+
+        @Bean
+        MongoClientSettingsBuilderCustomizer commandCapture() {
+            return settings -> settings.addCommandListener(new CommandListener() {
+                @Override
+                public void commandStarted(CommandStartedEvent event) {
+                    if (EXPLAINABLE.contains(event.getCommandName())) {
+                        COMMANDS.add(event.getCommand().clone());
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Forgets the commands recorded so far, such as those that set up the test data.
+     */
+    public static void clear() {
+        COMMANDS.clear();
+    }
+
+    /**
+     * The commands recorded for {@code collection} whose plan scans it to filter or sort, as JSON.
+     */
+    public static List<String> collectionScans(ReactiveMongoTemplate reactiveMongoTemplate, String collection) {
+
+        return explainable(collection).stream()
+                .filter(command -> !collectionScans(explain(reactiveMongoTemplate, command)).isEmpty())
+                .map(BsonDocument::toJson)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * The commands sent for the collection, one write statement each, as explain takes them.
+     */
+    private static List<BsonDocument> explainable(String collection) {
+
+        var explainable = new ArrayList<BsonDocument>();
+        for (var command : COMMANDS) {
+            var name = command.getFirstKey();
+            if (!new BsonString(collection).equals(command.get(name))) {
+                continue;
+            }
+            var stripped = new BsonDocument();
+            command.forEach((key, value) -> {
+                if (!key.startsWith("$") && !NOT_EXPLAINED.contains(key)) {
+                    stripped.append(key, value);
+                }
+            });
+            var statements = name.equals("update") ? "updates" : name.equals("delete") ? "deletes" : null;
+            if (statements == null) {
+                explainable.add(stripped);
+                continue;
+            }
+            for (BsonValue statement : stripped.getArray(statements)) {
+                explainable.add(stripped.clone().append(statements, new BsonArray(List.of(statement))));
+            }
+        }
+        return explainable;
+    }
+
+    private static Document explain(ReactiveMongoTemplate reactiveMongoTemplate, BsonDocument command) {
+
+        var explain = new BsonDocument("explain", command).append("verbosity", new BsonString("queryPlanner"));
+        return reactiveMongoTemplate.getMongoDatabase()
+                .flatMap(database -> Mono.from(database.runCommand(explain)))
+                .block();
+    }
+
+    private static List<Document> collectionScans(Document explained) {
+
+        var winningPlans = new ArrayList<Document>();
+        winningPlans(explained, winningPlans);
+        var collectionScans = new ArrayList<Document>();
+        winningPlans.forEach(plan -> collectionScans(plan, false, collectionScans));
+        return collectionScans;
+    }
+
+    private static void winningPlans(Object node, List<Document> winningPlans) {
+
+        if (node instanceof Document) {
+            ((Document) node).forEach((key, value) -> {
+                if (key.equals("winningPlan")) {
+                    winningPlans.add((Document) value);
+                } else if (!key.equals("rejectedPlans")) {
+                    winningPlans(value, winningPlans);
+                }
+            });
+        } else if (node instanceof List) {
+            ((List<?>) node).forEach(element -> winningPlans(element, winningPlans));
+        }
+    }
+
+    private static void collectionScans(Object node, boolean sorted, List<Document> collectionScans) {
+
+        if (node instanceof Document) {
+            var stage = (Document) node;
+            var sorting = sorted || "SORT".equals(stage.get("stage"));
+            if ("COLLSCAN".equals(stage.get("stage")) && (sorting || stage.containsKey("filter"))) {
+                collectionScans.add(stage);
+            }
+            stage.values().forEach(value -> collectionScans(value, sorting, collectionScans));
+        } else if (node instanceof List) {
+            ((List<?>) node).forEach(element -> collectionScans(element, sorted, collectionScans));
+        }
+    }
+}